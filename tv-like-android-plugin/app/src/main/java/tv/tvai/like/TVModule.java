@@ -3,34 +3,153 @@ package tv.tvai.like;
 import android.content.Context;
 
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import eskit.sdk.support.EsPromise;
 import eskit.sdk.support.args.EsArray;
 import eskit.sdk.support.args.EsMap;
 import eskit.sdk.support.module.IEsModule;
+import tv.tvai.like.util.DaemonThreadFactory;
+import tv.tvai.like.util.StringUtils;
 
+/**
+ * Bridge module. Extraction never runs on the bridge thread: {@link #like} queues the work on a
+ * small background pool and resolves the promise from there.
+ * <p>
+ * Requests for the same {@code url}, {@code html} and hub that arrive while one is still running
+ * share its result instead of parsing and fetching again. {@link #cancel} drops everything in flight, e.g.
+ * when the user navigates away, so abandoned pages stop using the network and CPU.
+ */
 public class TVModule implements IEsModule {
 
+    private static final int THREADS = 2;
+    private static final int QUEUE_SIZE = 16;
+    private static final String CANCELLED = "cancelled";
+
+    private final Object lock = new Object();
+    private final Map<RequestKey, Request> inFlight = new HashMap<>();
+    private final Map<String, TVLikeDSL> resolvers = new HashMap<>();
+    private ThreadPoolExecutor executor;
+    private int generation;
+
     @Override
     public void init(Context context) {
-
+        synchronized (lock) {
+            if (executor == null) {
+                executor = new ThreadPoolExecutor(THREADS, THREADS, 30, TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<Runnable>(QUEUE_SIZE), new DaemonThreadFactory("tv-like-module-"));
+                executor.allowCoreThreadTimeOut(true);
+            }
+        }
     }
 
     @Override
     public void destroy() {
-
+        ThreadPoolExecutor pool;
+        List<EsPromise> cancelled;
+        synchronized (lock) {
+            cancelled = cancelAll();
+            resolvers.clear();
+            pool = executor;
+            executor = null;
+        }
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+        reject(cancelled, CANCELLED);
     }
 
     public void like(EsMap map, EsPromise promise) {
         String html = map.getString("html");
         String url = map.getString("url");
         String dslHub = map.getString("dslHub");
-        TV tv = new TV(html, url, dslHub);
-        List<Map<String, Object>> like = tv.like();
-        EsArray array = getArray(like);
-        promise.resolve(array);
+        RequestKey key = new RequestKey(dslHub, url, html);
+        synchronized (lock) {
+            if (executor == null) {
+                init(null);
+            }
+            Request request = inFlight.get(key);
+            if (request != null) {
+                request.promises.add(promise);
+                return;
+            }
+            request = new Request(key, html, url, resolver(dslHub), generation);
+            request.promises.add(promise);
+            try {
+                executor.execute(request);
+                inFlight.put(key, request);
+                return;
+            } catch (RejectedExecutionException e) {
+                // Rejected below, outside the lock.
+            }
+        }
+        promise.reject("busy");
+    }
+
+    /**
+     * Drops in-flight requests: the one for {@code url} when given, otherwise all of them. Their
+     * promises are rejected with {@code "cancelled"} and their hub requests and DOM walks aborted.
+     */
+    public void cancel(EsMap map, EsPromise promise) {
+        String url = map == null ? null : map.getString("url");
+        List<EsPromise> cancelled;
+        synchronized (lock) {
+            if (StringUtils.isBlank(url)) {
+                cancelled = cancelAll();
+            } else {
+                List<Request> matching = new ArrayList<>();
+                for (Request request : inFlight.values()) {
+                    if (url.equals(request.url)) {
+                        matching.add(request);
+                    }
+                }
+                cancelled = new ArrayList<>();
+                for (Request request : matching) {
+                    inFlight.remove(request.key);
+                    cancelled.addAll(request.cancel());
+                }
+            }
+        }
+        reject(cancelled, CANCELLED);
+        promise.resolve(true);
+    }
+
+    /**
+     * Cancels every in-flight request; must hold {@code lock}.
+     *
+     * @return the promises to reject once {@code lock} is released
+     */
+    private List<EsPromise> cancelAll() {
+        generation++;
+        List<EsPromise> cancelled = new ArrayList<>();
+        for (Request request : inFlight.values()) {
+            cancelled.addAll(request.cancel());
+        }
+        inFlight.clear();
+        return cancelled;
+    }
+
+    private static void reject(List<EsPromise> promises, String reason) {
+        for (EsPromise promise : promises) {
+            promise.reject(reason);
+        }
+    }
+
+    private TVLikeDSL resolver(String dslHub) {
+        String hubKey = dslHub == null ? "" : dslHub;
+        TVLikeDSL resolver = resolvers.get(hubKey);
+        if (resolver == null) {
+            resolver = dslHub == null ? new TVLikeDSL() : new TVLikeDSL(dslHub);
+            resolvers.put(hubKey, resolver);
+        }
+        return resolver;
     }
 
     private EsArray getArray(List<Map<String, Object>> like) {
@@ -40,4 +159,92 @@ public class TVModule implements IEsModule {
         }
         return array;
     }
+
+    /**
+     * Identifies requests that may share one extraction: same hub, url and html. A re-rendered
+     * page under the same url is a new request.
+     */
+    private static final class RequestKey {
+        private final String dslHub;
+        private final String url;
+        private final String html;
+
+        private RequestKey(String dslHub, String url, String html) {
+            this.dslHub = dslHub == null ? "" : dslHub;
+            this.url = url == null ? "" : url;
+            this.html = html == null ? "" : html;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof RequestKey)) {
+                return false;
+            }
+            RequestKey other = (RequestKey) o;
+            return dslHub.equals(other.dslHub) && url.equals(other.url) && html.equals(other.html);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * dslHub.hashCode() + url.hashCode()) + html.hashCode();
+        }
+    }
+
+    /**
+     * One queued or running extraction and every promise waiting for it. The promise list is only
+     * touched under {@code lock}, so a request is either answered or cancelled, never both; the
+     * promises themselves are settled after {@code lock} is released.
+     */
+    private final class Request implements Runnable {
+        private final RequestKey key;
+        private final String html;
+        private final String url;
+        private final TVLikeDSL resolver;
+        private final int generation;
+        private final Cancellation cancellation = new Cancellation();
+        private final List<EsPromise> promises = new ArrayList<>();
+
+        private Request(RequestKey key, String html, String url, TVLikeDSL resolver, int generation) {
+            this.key = key;
+            this.html = html;
+            this.url = url;
+            this.resolver = resolver;
+            this.generation = generation;
+        }
+
+        @Override
+        public void run() {
+            List<Map<String, Object>> like = cancellation.isCancelled()
+                    ? null
+                    : TV.like(html, url, resolver, null, cancellation);
+            List<EsPromise> waiting;
+            synchronized (lock) {
+                if (cancellation.isCancelled() || generation != TVModule.this.generation) {
+                    return;
+                }
+                inFlight.remove(key);
+                waiting = new ArrayList<>(promises);
+                promises.clear();
+            }
+            EsArray array = getArray(like);
+            for (EsPromise promise : waiting) {
+                promise.resolve(array);
+            }
+        }
+
+        /**
+         * Must hold {@code lock}.
+         *
+         * @return the promises that were waiting, to reject once {@code lock} is released
+         */
+        private List<EsPromise> cancel() {
+            cancellation.cancel();
+            List<EsPromise> waiting = new ArrayList<>(promises);
+            promises.clear();
+            return waiting;
+        }
+    }
 }
@@ -0,0 +1,127 @@
+package tv.tvai.like;
+
+import org.jsoup.nodes.Element;
+
+/**
+ * Counting Bloom filter over the tags, ids and classes of the elements currently on the
+ * traversal stack. A selector like {@code div.module-main .module-items} can only match an
+ * element that has a {@code div} and a {@code module-main} ancestor; if either hash is absent
+ * from the filter the element is rejected without walking its ancestor chain. False positives
+ * simply fall through to the full {@code Element.is} check.
+ */
+final class AncestorFilter {
+
+    private static final int SIZE = 1 << 12;
+    private static final int MASK = SIZE - 1;
+    private static final int SATURATED = 0xff;
+
+    private static final int TAG_SALT = 0x1b873593;
+    private static final int ID_SALT = 0x2c1b3c6d;
+    private static final int CLASS_SALT = 0x297a2d39;
+
+    private final byte[] counters = new byte[SIZE];
+
+    /**
+     * Adds {@code el} and all of its ancestors, for a traversal that starts below the document root.
+     */
+    void pushAncestorsOf(Element el) {
+        Element parent = el.parent();
+        if (parent != null) {
+            pushAncestorsOf(parent);
+            push(parent);
+        }
+    }
+
+    void push(Element el) {
+        update(el, 1);
+    }
+
+    void pop(Element el) {
+        update(el, -1);
+    }
+
+    /**
+     * {@code false} when at least one of {@code hashes} definitely belongs to no element on the stack.
+     */
+    boolean mightContainAll(int[] hashes) {
+        for (int hash : hashes) {
+            if (counters[hash & MASK] == 0 || counters[(hash >>> 16) & MASK] == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static int tagHash(String tag) {
+        return mix(hash(TAG_SALT, tag, 0, tag.length()));
+    }
+
+    static int idHash(String id) {
+        return mix(hash(ID_SALT, id, 0, id.length()));
+    }
+
+    /**
+     * Hash of a class name, case folded to follow jsoup's case-insensitive {@code hasClass}.
+     */
+    static int classHash(String className) {
+        return classHash(className, 0, className.length());
+    }
+
+    private static int classHash(String text, int start, int end) {
+        int h = CLASS_SALT;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + SelectorShape.foldCase(text.charAt(i));
+        }
+        return mix(h);
+    }
+
+    private void update(Element el, int delta) {
+        add(tagHash(el.normalName()), delta);
+        String id = el.id();
+        if (!id.isEmpty()) {
+            add(idHash(id), delta);
+        }
+        String className = el.className();
+        int len = className.length();
+        int i = 0;
+        while (i < len) {
+            while (i < len && Character.isWhitespace(className.charAt(i))) i++;
+            int start = i;
+            while (i < len && !Character.isWhitespace(className.charAt(i))) i++;
+            if (i > start) {
+                add(classHash(className, start, i), delta);
+            }
+        }
+    }
+
+    private void add(int hash, int delta) {
+        bump(hash & MASK, delta);
+        bump((hash >>> 16) & MASK, delta);
+    }
+
+    private void bump(int slot, int delta) {
+        int count = counters[slot] & 0xff;
+        if (count == SATURATED) {
+            // A saturated counter can no longer be decremented safely; it stays "present".
+            return;
+        }
+        counters[slot] = (byte) (count + delta);
+    }
+
+    private static int hash(int seed, String text, int start, int end) {
+        int h = seed;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + text.charAt(i);
+        }
+        return h;
+    }
+
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,49 @@
+package tv.tvai.like;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cancellation signal shared by every stage of one extraction run, such as {@link TV#likeAsync()}.
+ * Cancelling aborts each hub request created through {@link #newCall(long)} and makes the
+ * {@link Extractor} stop its document walk at the next element.
+ */
+final class Cancellation {
+
+    private final List<HubCall> calls = new ArrayList<HubCall>();
+    private volatile boolean cancelled;
+
+    /**
+     * A hub call tied to this signal; already aborted if the signal has fired.
+     */
+    HubCall newCall(long deadlineNanos) {
+        HubCall call = new HubCall(deadlineNanos);
+        synchronized (calls) {
+            if (!cancelled) {
+                calls.add(call);
+                return call;
+            }
+        }
+        call.abort();
+        return call;
+    }
+
+    void cancel() {
+        List<HubCall> inFlight;
+        synchronized (calls) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            inFlight = new ArrayList<HubCall>(calls);
+            calls.clear();
+        }
+        for (HubCall call : inFlight) {
+            call.abort();
+        }
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+}
@@ -0,0 +1,75 @@
+package tv.tvai.like;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Immutable list of compiled rules that carries its {@link RuleIndex}, so the index is built
+ * once per {@link RuleSet} instead of once per extracted page.
+ * <p>
+ * Selectors are compiled on first access rather than up front, so a rule set only pays for the
+ * paths that are actually visited. Rules whose selector does not compile are left out.
+ */
+final class CompiledRuleList extends AbstractList<RuleNode> implements RandomAccess {
+
+    private final RuleNode[] source;
+    private volatile Compiled compiled;
+
+    CompiledRuleList(List<RuleNode> rules) {
+        this.source = rules.toArray(new RuleNode[0]);
+    }
+
+    /**
+     * The rules as parsed, before invalid ones are dropped.
+     */
+    List<RuleNode> source() {
+        return Collections.unmodifiableList(Arrays.asList(source));
+    }
+
+    RuleIndex index() {
+        return compiled().index;
+    }
+
+    @Override
+    public RuleNode get(int i) {
+        return compiled().rules[i];
+    }
+
+    @Override
+    public int size() {
+        return compiled().rules.length;
+    }
+
+    private Compiled compiled() {
+        Compiled c = compiled;
+        if (c == null) {
+            synchronized (this) {
+                c = compiled;
+                if (c == null) {
+                    List<RuleNode> rules = new ArrayList<>(source.length);
+                    for (RuleNode node : source) {
+                        if (node.compile()) {
+                            rules.add(node);
+                        }
+                    }
+                    compiled = c = new Compiled(rules);
+                }
+            }
+        }
+        return c;
+    }
+
+    private static final class Compiled {
+        private final RuleNode[] rules;
+        private final RuleIndex index;
+
+        private Compiled(List<RuleNode> rules) {
+            this.rules = rules.toArray(new RuleNode[0]);
+            this.index = RuleIndex.build(rules);
+        }
+    }
+}
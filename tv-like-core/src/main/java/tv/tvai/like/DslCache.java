@@ -0,0 +1,147 @@
+package tv.tvai.like;
+
+import tv.tvai.like.util.LruCache;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Layered cache for hub DSLs: an in-memory LRU in front of an optional directory store.
+ * Entries are keyed by the hub url they were downloaded from and expire after {@code ttlMillis},
+ * after which {@link TVLikeDSL} revalidates them with {@code If-None-Match}/{@code If-Modified-Since}.
+ * <p>
+ * Alongside the DSLs the cache keeps a {@link HubRoute} per host, remembering which candidate url
+ * answered, or that none did. Winning routes expire after {@code routeTtlMillis}, so a DSL the hub
+ * has moved to a better candidate is eventually found; negative routes expire after the shorter
+ * {@code negativeTtlMillis}.
+ */
+public class DslCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 256;
+    public static final long DEFAULT_TTL_MILLIS = TimeUnit.HOURS.toMillis(6);
+    public static final long DEFAULT_NEGATIVE_TTL_MILLIS = TimeUnit.MINUTES.toMillis(30);
+    public static final long DEFAULT_ROUTE_TTL_MILLIS = TimeUnit.HOURS.toMillis(24);
+
+    private static volatile DslCache shared = new DslCache(DEFAULT_MAX_ENTRIES, DEFAULT_TTL_MILLIS, null);
+
+    private final LruCache<String, DslCacheEntry> memory;
+    private final LruCache<String, HubRoute> routes;
+    private final DslDiskStore disk;
+    private final long ttlMillis;
+    private final long negativeTtlMillis;
+    private final long routeTtlMillis;
+
+    public DslCache(int maxEntries, long ttlMillis, File directory) {
+        this(maxEntries, ttlMillis, Math.min(ttlMillis, DEFAULT_NEGATIVE_TTL_MILLIS), directory);
+    }
+
+    public DslCache(int maxEntries, long ttlMillis, long negativeTtlMillis, File directory) {
+        this(maxEntries, ttlMillis, negativeTtlMillis, DEFAULT_ROUTE_TTL_MILLIS, directory);
+    }
+
+    public DslCache(int maxEntries, long ttlMillis, long negativeTtlMillis, long routeTtlMillis, File directory) {
+        if (ttlMillis < 0) {
+            throw new IllegalArgumentException("ttlMillis must not be negative: " + ttlMillis);
+        }
+        if (negativeTtlMillis < 0) {
+            throw new IllegalArgumentException("negativeTtlMillis must not be negative: " + negativeTtlMillis);
+        }
+        if (routeTtlMillis < 0) {
+            throw new IllegalArgumentException("routeTtlMillis must not be negative: " + routeTtlMillis);
+        }
+        this.memory = new LruCache<>(maxEntries);
+        this.routes = new LruCache<>(maxEntries * 4);
+        this.ttlMillis = ttlMillis;
+        this.negativeTtlMillis = negativeTtlMillis;
+        this.routeTtlMillis = routeTtlMillis;
+        this.disk = directory == null ? null : new DslDiskStore(directory);
+    }
+
+    /**
+     * Cache used by {@link TVLikeDSL} instances that were not given one explicitly.
+     */
+    public static DslCache shared() {
+        return shared;
+    }
+
+    public static void setShared(DslCache cache) {
+        if (cache == null) {
+            throw new IllegalArgumentException("cache must not be null");
+        }
+        shared = cache;
+    }
+
+    public DslCacheEntry get(String url) {
+        DslCacheEntry entry = memory.get(url);
+        if (entry != null || disk == null) {
+            return entry;
+        }
+        entry = disk.read(url);
+        if (entry != null) {
+            memory.put(url, entry);
+        }
+        return entry;
+    }
+
+    public void put(DslCacheEntry entry) {
+        memory.put(entry.getUrl(), entry);
+        if (disk != null) {
+            disk.write(entry);
+        }
+    }
+
+    public void remove(String url) {
+        memory.remove(url);
+        if (disk != null) {
+            disk.delete(url);
+        }
+    }
+
+    /**
+     * Route for {@code hostKey}, or {@code null} if the host is unknown or its route expired.
+     */
+    public HubRoute getRoute(String hostKey) {
+        HubRoute route = routes.get(hostKey);
+        if (route != null && route.isExpired(System.currentTimeMillis())) {
+            routes.remove(hostKey);
+            return null;
+        }
+        return route;
+    }
+
+    public void putHit(String hostKey, String url) {
+        routes.put(hostKey, HubRoute.hit(url, System.currentTimeMillis() + routeTtlMillis));
+    }
+
+    public void putMiss(String hostKey) {
+        routes.put(hostKey, HubRoute.miss(System.currentTimeMillis() + negativeTtlMillis));
+    }
+
+    public void removeRoute(String hostKey) {
+        routes.remove(hostKey);
+    }
+
+    public void clear() {
+        memory.clear();
+        routes.clear();
+        if (disk != null) {
+            disk.clear();
+        }
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    public long getNegativeTtlMillis() {
+        return negativeTtlMillis;
+    }
+
+    public long getRouteTtlMillis() {
+        return routeTtlMillis;
+    }
+
+    public int size() {
+        return memory.size();
+    }
+}
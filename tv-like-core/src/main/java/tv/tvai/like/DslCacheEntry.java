@@ -0,0 +1,58 @@
+package tv.tvai.like;
+
+/**
+ * A DSL downloaded from the hub together with the validators needed to revalidate it.
+ */
+public final class DslCacheEntry {
+
+    private final String url;
+    private final String dsl;
+    private final String etag;
+    private final String lastModified;
+    private final long fetchedAt;
+    private final long expiresAt;
+
+    public DslCacheEntry(String url, String dsl, String etag, String lastModified, long fetchedAt, long expiresAt) {
+        this.url = url;
+        this.dsl = dsl;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.fetchedAt = fetchedAt;
+        this.expiresAt = expiresAt;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getDsl() {
+        return dsl;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    public long getFetchedAt() {
+        return fetchedAt;
+    }
+
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    public boolean isExpired(long now) {
+        return now >= expiresAt;
+    }
+
+    /**
+     * Copy of this entry after the hub answered {@code 304 Not Modified}.
+     */
+    public DslCacheEntry revalidated(long now, long expiresAt) {
+        return new DslCacheEntry(url, dsl, etag, lastModified, now, expiresAt);
+    }
+}
@@ -0,0 +1,128 @@
+package tv.tvai.like;
+
+import tv.tvai.like.util.DigestUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Directory backed store for {@link DslCacheEntry}s, one file per hub url. Files are written to
+ * a temporary name first and renamed into place, so readers never observe a partial entry.
+ */
+class DslDiskStore {
+
+    private static final int MAGIC = 0x54564443;
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".dslc";
+
+    private final File directory;
+
+    DslDiskStore(File directory) {
+        this.directory = directory;
+    }
+
+    DslCacheEntry read(String url) {
+        File file = fileFor(url);
+        if (!file.isFile()) {
+            return null;
+        }
+        long size = file.length();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            String storedUrl = readString(in, size);
+            if (!url.equals(storedUrl)) {
+                return null;
+            }
+            String etag = readString(in, size);
+            String lastModified = readString(in, size);
+            long fetchedAt = in.readLong();
+            long expiresAt = in.readLong();
+            String dsl = readString(in, size);
+            return new DslCacheEntry(storedUrl, dsl, etag, lastModified, fetchedAt, expiresAt);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    void write(DslCacheEntry entry) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            return;
+        }
+        File file = fileFor(entry.getUrl());
+        File tmp = new File(directory, file.getName() + "." + Thread.currentThread().getId() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeString(out, entry.getUrl());
+            writeString(out, entry.getEtag());
+            writeString(out, entry.getLastModified());
+            out.writeLong(entry.getFetchedAt());
+            out.writeLong(entry.getExpiresAt());
+            writeString(out, entry.getDsl());
+        } catch (IOException e) {
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            file.delete();
+            if (!tmp.renameTo(file)) {
+                tmp.delete();
+            }
+        }
+    }
+
+    void delete(String url) {
+        fileFor(url).delete();
+    }
+
+    void clear() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.getName().endsWith(SUFFIX)) {
+                file.delete();
+            }
+        }
+    }
+
+    private File fileFor(String url) {
+        return new File(directory, DigestUtils.sha256Hex(url) + SUFFIX);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * @param fileSize bounds the stored length, so a corrupt file cannot make us allocate more than it holds
+     */
+    private static String readString(DataInputStream in, long fileSize) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > fileSize) {
+            throw new IOException("corrupt DSL cache file: length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,147 @@
+package tv.tvai.like;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Read-only offline bundle of hub DSLs, written by {@link DslPackBuilder} and memory-mapped on
+ * {@link #open(File)}. Keys are hub paths without the {@code .dsl} suffix ({@code www.foo.example},
+ * {@code example/foo}, ...), so {@link TVLikeDSL} looks a host up under the same candidates it
+ * would request from the hub, and only asks the hub when the pack has none of them.
+ * <p>
+ * Layout, all ints big-endian:
+ * <pre>
+ * magic "TVDP", version, count     int, int, int
+ * index                            count * (key offset, key length, dsl offset, dsl length)
+ * keys, dsls                       UTF-8 bytes
+ * </pre>
+ * Index entries are sorted by the unsigned bytes of their key, so a lookup binary searches the
+ * index and compares keys in place; it reads a handful of index and key pages plus the DSL
+ * itself, never the whole file. Lookups are thread-safe.
+ */
+public final class DslPack {
+
+    static final int MAGIC = 0x54564450;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 12;
+    static final int ENTRY_SIZE = 16;
+
+    private static volatile DslPack shared;
+
+    private final ByteBuffer buffer;
+    private final int count;
+
+    private DslPack(ByteBuffer buffer, int count) {
+        this.buffer = buffer;
+        this.count = count;
+    }
+
+    /**
+     * Maps {@code file}; the mapping stays valid until the pack is garbage collected.
+     *
+     * @throws IOException if the file cannot be read or is not a pack of this version
+     */
+    public static DslPack open(File file) throws IOException {
+        MappedByteBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel channel = raf.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("DSL pack too large: " + file);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("not a DSL pack: " + file);
+        }
+        int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("unsupported DSL pack version " + version + ": " + file);
+        }
+        int count = buffer.getInt(8);
+        if (count < 0 || count > (buffer.capacity() - HEADER_SIZE) / ENTRY_SIZE) {
+            throw new IOException("corrupt DSL pack: " + file);
+        }
+        return new DslPack(buffer, count);
+    }
+
+    /**
+     * Pack consulted by {@link TVLikeDSL} instances that were not given one explicitly; none by default.
+     */
+    public static DslPack shared() {
+        return shared;
+    }
+
+    /**
+     * @param pack the pack to use, or {@code null} to go to the hub only
+     */
+    public static void setShared(DslPack pack) {
+        shared = pack;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return the DSL stored under {@code key}, or {@code null} if there is none or its entry is corrupt
+     */
+    public String get(String key) {
+        if (key == null) {
+            return null;
+        }
+        byte[] wanted = key.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int entry = HEADER_SIZE + mid * ENTRY_SIZE;
+            int cmp = compareKey(buffer.getInt(entry), buffer.getInt(entry + 4), wanted);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return read(buffer.getInt(entry + 8), buffer.getInt(entry + 12));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Compares the stored key at {@code [offset, offset + length)} with {@code wanted}; a key
+     * that lies outside the file sorts first, so a corrupt entry never matches.
+     */
+    private int compareKey(int offset, int length, byte[] wanted) {
+        if (!inBounds(offset, length)) {
+            return -1;
+        }
+        int n = Math.min(length, wanted.length);
+        for (int i = 0; i < n; i++) {
+            int cmp = (buffer.get(offset + i) & 0xFF) - (wanted[i] & 0xFF);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return length - wanted.length;
+    }
+
+    private String read(int offset, int length) {
+        if (!inBounds(offset, length)) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private boolean inBounds(int offset, int length) {
+        return offset >= 0 && length >= 0 && offset <= buffer.capacity() - length;
+    }
+}
@@ -0,0 +1,172 @@
+package tv.tvai.like;
+
+import tv.tvai.like.util.StringUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Writes a {@link DslPack}. {@link #addDirectory(File)} snapshots a local mirror of the hub: every
+ * {@code .dsl} file below the directory is stored under its relative path without the suffix,
+ * so {@code www.foo.example.dsl} and {@code example/foo.dsl} are found exactly as the hub urls
+ * with the same names would be. {@code DslPackTool} in tv-like-module runs it from the command line.
+ */
+public final class DslPackBuilder {
+
+    private static final String SUFFIX = ".dsl";
+
+    private static final Comparator<byte[]> UNSIGNED = new Comparator<byte[]>() {
+        @Override
+        public int compare(byte[] a, byte[] b) {
+            int n = Math.min(a.length, b.length);
+            for (int i = 0; i < n; i++) {
+                int cmp = (a[i] & 0xFF) - (b[i] & 0xFF);
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return a.length - b.length;
+        }
+    };
+
+    private final Map<byte[], byte[]> entries = new TreeMap<>(UNSIGNED);
+
+    /**
+     * Adds or replaces the DSL stored under {@code key}; the key is lower-cased and stripped of
+     * surrounding slashes, the DSL trimmed. Blank DSLs are skipped, as the hub treats them as missing.
+     */
+    public DslPackBuilder add(String key, String dsl) {
+        String normalized = normalizeKey(key);
+        if (normalized.isEmpty()) {
+            throw new IllegalArgumentException("key must not be blank");
+        }
+        if (StringUtils.isBlank(dsl)) {
+            return this;
+        }
+        entries.put(normalized.getBytes(StandardCharsets.UTF_8), dsl.trim().getBytes(StandardCharsets.UTF_8));
+        return this;
+    }
+
+    public DslPackBuilder addDirectory(File directory) throws IOException {
+        addFiles(directory, "");
+        return this;
+    }
+
+    private void addFiles(File directory, String prefix) throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            throw new IOException("cannot list " + directory);
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (file.isDirectory()) {
+                addFiles(file, prefix + name + "/");
+            } else if (name.endsWith(SUFFIX) && name.length() > SUFFIX.length()) {
+                String dsl = new String(readFile(file), StandardCharsets.UTF_8);
+                add(prefix + name.substring(0, name.length() - SUFFIX.length()), dsl);
+            }
+        }
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            if (in.length() > Integer.MAX_VALUE) {
+                throw new IOException("DSL file too large: " + file);
+            }
+            byte[] bytes = new byte[(int) in.length()];
+            in.readFully(bytes);
+            return bytes;
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Writes the pack to a temporary file next to {@code file} and renames it into place, so a
+     * process mapping the old pack never sees a partial one.
+     *
+     * @return the number of DSLs written
+     */
+    public int write(File file) throws IOException {
+        List<byte[]> keys = new ArrayList<>(entries.keySet());
+        List<byte[]> dsls = new ArrayList<>(entries.values());
+        long keysStart = DslPack.HEADER_SIZE + (long) keys.size() * DslPack.ENTRY_SIZE;
+        long dslsStart = keysStart;
+        for (byte[] key : keys) {
+            dslsStart += key.length;
+        }
+        long end = dslsStart;
+        for (byte[] dsl : dsls) {
+            end += dsl.length;
+        }
+        if (end > Integer.MAX_VALUE) {
+            throw new IOException("DSL pack too large: " + end + " bytes");
+        }
+
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("cannot create " + directory);
+        }
+        File tmp = new File(directory, file.getName() + "." + Thread.currentThread().getId() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(DslPack.MAGIC);
+            out.writeInt(DslPack.VERSION);
+            out.writeInt(keys.size());
+            int keyOffset = (int) keysStart;
+            int dslOffset = (int) dslsStart;
+            for (int i = 0; i < keys.size(); i++) {
+                out.writeInt(keyOffset);
+                out.writeInt(keys.get(i).length);
+                out.writeInt(dslOffset);
+                out.writeInt(dsls.get(i).length);
+                keyOffset += keys.get(i).length;
+                dslOffset += dsls.get(i).length;
+            }
+            for (byte[] key : keys) {
+                out.write(key);
+            }
+            for (byte[] dsl : dsls) {
+                out.write(dsl);
+            }
+        } catch (IOException e) {
+            tmp.delete();
+            throw e;
+        }
+        if (!tmp.renameTo(file)) {
+            file.delete();
+            if (!tmp.renameTo(file)) {
+                tmp.delete();
+                throw new IOException("cannot rename " + tmp + " to " + file);
+            }
+        }
+        return keys.size();
+    }
+
+    private static String normalizeKey(String key) {
+        if (key == null) {
+            return "";
+        }
+        String normalized = key.trim().toLowerCase();
+        int start = 0;
+        int end = normalized.length();
+        while (start < end && normalized.charAt(start) == '/') {
+            start++;
+        }
+        while (end > start && normalized.charAt(end - 1) == '/') {
+            end--;
+        }
+        return normalized.substring(start, end);
+    }
+}
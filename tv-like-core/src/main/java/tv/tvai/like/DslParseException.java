@@ -0,0 +1,27 @@
+package tv.tvai.like;
+
+/**
+ * A malformed DSL, reported by {@link RuleParser#compileStrict(String)} with the 1-based line and
+ * column where parsing failed.
+ */
+public class DslParseException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int line;
+    private final int column;
+
+    public DslParseException(String message, int line, int column) {
+        super(message + " at line " + line + ", column " + column);
+        this.line = line;
+        this.column = column;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+}
@@ -0,0 +1,791 @@
+package tv.tvai.like;
+
+import tv.tvai.like.enums.OptionKeyEnum;
+import tv.tvai.like.transform.Transforms;
+import tv.tvai.like.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hand-written recursive-descent parser behind {@link RuleParser}. It makes one pass over the DSL
+ * text, without regex scans or copies of whole blocks:
+ * <pre>
+ * dsl     := (path | section)*
+ * path    := 'path' ':' patterns '{' section* '}'
+ * section := 'section' ':' name selector '{' (field | items)* '}' options*
+ * items   := 'items' ':' selector '{' field* '}' options*
+ * field   := ('text' | 'img' | 'link') ':' selector options*     -- one line
+ * options := '[' key[:value] (',' key[:value])* ']'
+ * </pre>
+ * Keywords are case-insensitive. {@code /* ... *}{@code /} comments may appear anywhere except in
+ * path patterns, where {@code /**} and {@code /*.html} are globs, not comment openers.
+ * <p>
+ * By default the parser is as forgiving as the DSL has always been: lines it does not understand
+ * are skipped, unclosed blocks dropped, and top-level sections only used when no {@code path}
+ * block yields rules. In strict mode the first such problem is thrown as a
+ * {@link DslParseException} carrying its line and column.
+ */
+final class DslParser {
+
+    private static final String[] FIELDS = {"text", "img", "link"};
+    private static final String DEFAULT_PATTERN = "/**";
+
+    private final String src;
+    private final int length;
+    private final boolean strict;
+    /**
+     * Start of the last {@code *}{@code /}; a {@code /*} after it is plain text, as it always was.
+     */
+    private final int lastCommentEnd;
+    private int nextComment = -1;
+    private int nextCarriageReturn = -1;
+    private int pos;
+    private boolean hasContent;
+    private final Map<String, List<RuleNode>> pathRules = new LinkedHashMap<>();
+    private final List<RuleNode> looseSections = new ArrayList<>();
+
+    private DslParser(String src, boolean strict) {
+        this.src = src;
+        this.length = src.length();
+        this.strict = strict;
+        this.lastCommentEnd = src.lastIndexOf("*/");
+    }
+
+    /**
+     * Path patterns to their section rules, in declaration order; a DSL without {@code path}
+     * blocks maps {@code /**} to its sections.
+     *
+     * @throws DslParseException in strict mode, at the first malformed construct
+     */
+    static Map<String, List<RuleNode>> parse(String dsl, boolean strict) {
+        DslParser parser = new DslParser(dsl == null ? "" : dsl, strict);
+        parser.parseDocument();
+        if (parser.pathRules.isEmpty() && parser.hasContent) {
+            parser.pathRules.put(DEFAULT_PATTERN, parser.looseSections);
+        }
+        return parser.pathRules;
+    }
+
+    private void parseDocument() {
+        while (true) {
+            skipSpace(true);
+            if (pos >= length) {
+                return;
+            }
+            int start = pos;
+            hasContent |= !Character.isWhitespace(src.charAt(pos));
+            if (parsePath()) {
+                continue;
+            }
+            pos = start;
+            RuleNode section = parseSection();
+            if (section != null) {
+                looseSections.add(section);
+                continue;
+            }
+            if (pos >= length) {
+                return;
+            }
+            pos = start;
+            error(start, "expected 'path' or 'section'");
+            skipTopLevelLine();
+        }
+    }
+
+    /**
+     * @return {@code false} when no {@code path} header starts here
+     */
+    private boolean parsePath() {
+        int after = keywordColon("path", true);
+        if (after < 0) {
+            return false;
+        }
+        pos = after;
+        int start = pos;
+        int open = start;
+        while (open < length && src.charAt(open) != '{' && src.charAt(open) != '}') {
+            open++;
+        }
+        if (open >= length || src.charAt(open) == '}') {
+            error(start, "expected '{'");
+            return false;
+        }
+        if (open == start) {
+            error(start, "missing path pattern");
+            return false;
+        }
+        String patterns = src.substring(start, open).trim();
+        pos = open + 1;
+        List<RuleNode> sections = new ArrayList<>();
+        if (!parseSections(sections)) {
+            unclosed(open);
+            // The complete sections of an unclosed block still serve as path-less sections.
+            looseSections.addAll(sections);
+            return true;
+        }
+        List<String> split = splitPathPatterns(patterns);
+        if (split.isEmpty()) {
+            error(start, "missing path pattern");
+            looseSections.addAll(sections);
+        } else if (!sections.isEmpty()) {
+            for (String pattern : split) {
+                if (!pathRules.containsKey(pattern)) {
+                    pathRules.put(pattern, sections);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Body of a {@code path} block, up to and including its closing brace.
+     *
+     * @return {@code false} when the input ends first
+     */
+    private boolean parseSections(List<RuleNode> sections) {
+        int depth = 0;
+        while (true) {
+            skipSpace(true);
+            if (pos >= length) {
+                return false;
+            }
+            int start = pos;
+            if (src.charAt(pos) == '}') {
+                pos++;
+                if (depth == 0) {
+                    return true;
+                }
+                depth = skipLine(depth - 1);
+                continue;
+            }
+            RuleNode section = parseSection();
+            if (section != null) {
+                sections.add(section);
+                continue;
+            }
+            if (pos >= length) {
+                return false;
+            }
+            pos = start;
+            if (strict) {
+                error(start, keywordColon("path", true) >= 0 ? "path blocks cannot be nested" : "expected 'section'");
+            }
+            depth = skipLine(depth);
+        }
+    }
+
+    /**
+     * @return the section, or {@code null} when no complete section starts here; an unclosed
+     * section leaves {@link #pos} at the end of input
+     */
+    private RuleNode parseSection() {
+        int after = keywordColon("section", true);
+        if (after < 0) {
+            return null;
+        }
+        pos = after;
+        skipSpace(true);
+        int nameStart = pos;
+        while (pos < length && isNameChar(src.charAt(pos))) {
+            pos++;
+        }
+        if (pos == nameStart) {
+            error(nameStart, "missing section name");
+            return null;
+        }
+        String name = src.substring(nameStart, pos);
+        pos = skipComments(pos);
+        if (pos >= length || !isSpace(src.charAt(pos))) {
+            error(pos, "expected a selector after section name");
+            return null;
+        }
+        skipSpace(true);
+        int start = pos;
+        int open = findOpeningBrace(false);
+        if (open < 0) {
+            error(start, "expected '{'");
+            return null;
+        }
+        String selector = text(start, open).trim();
+        if (selector.isEmpty()) {
+            error(start, "missing section selector");
+        }
+        RuleNode node = new RuleNode(name, selector);
+        pos = open + 1;
+        if (!parseBody(node, false)) {
+            unclosed(open);
+            return null;
+        }
+        RuleNode.Options options = new RuleNode.Options();
+        parseTrailingOptions(options);
+        node.setSectionOptions(options);
+        return node;
+    }
+
+    /**
+     * Body of a {@code section} or {@code items} block, up to and including its closing brace.
+     * Unknown lines are skipped; braces they open are tracked so fields inside still count.
+     *
+     * @return {@code false} when the input ends first
+     */
+    private boolean parseBody(RuleNode node, boolean items) {
+        int depth = 0;
+        while (true) {
+            skipSpace(true);
+            if (pos >= length) {
+                return false;
+            }
+            int start = pos;
+            if (src.charAt(pos) == '}') {
+                pos++;
+                if (depth == 0) {
+                    return true;
+                }
+                depth = skipLine(depth - 1);
+                continue;
+            }
+            int field = fieldAt();
+            if (field >= 0) {
+                depth = parseField(node, FIELDS[field], depth);
+                continue;
+            }
+            if (!items && node.getItemTemplate() == null && keywordColon("items", true) >= 0) {
+                RuleNode template = parseItems();
+                if (template != null) {
+                    node.setItemTemplate(template);
+                    continue;
+                }
+                if (pos >= length) {
+                    return false;
+                }
+            }
+            pos = start;
+            if (strict) {
+                error(start, unexpectedInBody(items));
+            }
+            depth = skipLine(depth);
+        }
+    }
+
+    private String unexpectedInBody(boolean items) {
+        if (keywordColon("section", true) >= 0) {
+            return "section blocks cannot be nested";
+        }
+        if (keywordColon("items", true) >= 0) {
+            return items ? "items blocks cannot be nested" : "only one items block is allowed per section";
+        }
+        return items ? "expected 'text', 'img' or 'link'" : "expected 'text', 'img', 'link' or 'items'";
+    }
+
+    /**
+     * @return the item template, or {@code null} when no complete {@code items} block starts here
+     */
+    private RuleNode parseItems() {
+        pos = keywordColon("items", true);
+        skipSpace(true);
+        int start = pos;
+        int open = findOpeningBrace(true);
+        if (open < 0) {
+            error(start, "expected '{'");
+            return null;
+        }
+        String selector = text(start, open).trim();
+        if (selector.isEmpty()) {
+            error(start, "missing items selector");
+        }
+        RuleNode template = new RuleNode();
+        template.setName("items");
+        template.setSelector(selector);
+        pos = open + 1;
+        if (!parseBody(template, true)) {
+            unclosed(open);
+            return null;
+        }
+        RuleNode.Options options = new RuleNode.Options();
+        parseTrailingOptions(options);
+        template.setSectionOptions(options);
+        return template;
+    }
+
+    /**
+     * One field line. The first selector and the first option set given for a field name win.
+     *
+     * @return the brace depth after the line, see {@link #skipLine(int)}
+     */
+    private int parseField(RuleNode node, String name, int depth) {
+        pos = keywordColon(name, false);
+        int start = pos;
+        int newDepth = skipLine(depth);
+        String rest = text(start, pos).trim();
+        if (rest.isEmpty()) {
+            error(start, "missing selector after '" + name + ":'");
+            return newDepth;
+        }
+        List<String> optionTokens = extractAllOptionTokens(rest);
+        String selector = stripOptionTokens(rest).trim();
+        if ("null".equalsIgnoreCase(selector)) {
+            selector = null;
+        }
+        if (selector != null && !node.getFieldSelectors().containsKey(name)) {
+            node.getFieldSelectors().put(name, selector);
+        }
+        RuleNode.Options fieldOptions = new RuleNode.Options();
+        for (String token : optionTokens) {
+            parseOptionToken(token, fieldOptions);
+        }
+        Object transform = fieldOptions.getValues().get(OptionKeyEnum.TRANSFORM.getKey());
+        if (strict && transform != null) {
+            // Extraction skips a malformed step; only strict mode reports it.
+            try {
+                Transforms.compile(transform.toString());
+            } catch (IllegalArgumentException e) {
+                error(start, e.getMessage());
+            }
+        }
+        if (!node.getFieldOptions().containsKey(name)) {
+            node.getFieldOptions().put(name, fieldOptions);
+        }
+        return newDepth;
+    }
+
+    /**
+     * {@code [..]} blocks following a closed {@code section} or {@code items} block. An unclosed
+     * bracket voids the whole run, as it always has.
+     */
+    private void parseTrailingOptions(RuleNode.Options options) {
+        int start = pos;
+        List<String> tokens = null;
+        while (true) {
+            int before = pos;
+            skipSpace(true);
+            if (pos >= length || src.charAt(pos) != '[') {
+                pos = before;
+                break;
+            }
+            int close = findOptionEnd(pos);
+            if (close < 0) {
+                error(pos, "unclosed '['");
+                pos = start;
+                return;
+            }
+            if (tokens == null) {
+                tokens = new ArrayList<>(2);
+            }
+            tokens.add(text(pos + 1, close).trim());
+            pos = close + 1;
+        }
+        if (tokens != null) {
+            for (String token : tokens) {
+                parseOptionToken(token, options);
+            }
+        }
+    }
+
+    /**
+     * @return index into {@link #FIELDS} of the field keyword, with its colon on the same line,
+     * at {@link #pos}; -1 otherwise
+     */
+    private int fieldAt() {
+        for (int i = 0; i < FIELDS.length; i++) {
+            if (keywordColon(FIELDS[i], false) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Matches {@code keyword}, case-insensitively, then optional spaces and a colon at {@link #pos}.
+     *
+     * @return the index after the colon, or -1
+     */
+    private int keywordColon(String keyword, boolean acrossLines) {
+        if (!src.regionMatches(true, pos, keyword, 0, keyword.length())) {
+            return -1;
+        }
+        int i = pos + keyword.length();
+        while (i < length) {
+            int next = skipComments(i);
+            if (next != i) {
+                i = next;
+                continue;
+            }
+            char c = src.charAt(i);
+            if (c == ':') {
+                return i + 1;
+            }
+            if (!isSpace(c) || (!acrossLines && isLineBreak(c))) {
+                return -1;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the {@code {} ending a header that starts at {@link #pos}.
+     *
+     * @return its index, or -1 when a {@code }}, the end of input or, for single-line headers, a
+     * line break comes first
+     */
+    private int findOpeningBrace(boolean singleLine) {
+        int i = pos;
+        while (i < length) {
+            int next = skipComments(i);
+            if (next != i) {
+                i = next;
+                continue;
+            }
+            char c = src.charAt(i);
+            if (c == '{') {
+                return i;
+            }
+            if (c == '}' || (singleLine && isLineBreak(c))) {
+                return -1;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    /**
+     * Index of the {@code ]} closing the option block opened at {@code open}; brackets inside
+     * quoted values (e.g. a {@code regex-extract} pattern) do not count. If a quote never closes,
+     * the first {@code ]} ends the block, as it did before quoted values were understood.
+     */
+    private int findOptionEnd(int open) {
+        char quote = 0;
+        int firstClose = -1;
+        int i = open + 1;
+        while (i < length) {
+            int next = skipComments(i);
+            if (next != i) {
+                i = next;
+                continue;
+            }
+            char c = src.charAt(i);
+            if (c == ']' && firstClose < 0) {
+                firstClose = i;
+            }
+            if (quote != 0) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == quote) {
+                    quote = 0;
+                }
+            } else if ((c == '"' || c == '\'') && startsQuotedValue(src, i, open + 1)) {
+                quote = c;
+            } else if (c == ']') {
+                return i;
+            }
+            i++;
+        }
+        return firstClose;
+    }
+
+    /**
+     * Moves {@link #pos} to the end of the current line, counting braces on the way.
+     *
+     * @param depth unclosed braces opened by skipped lines of the enclosing block
+     * @return the new depth; {@link #pos} stops early at a {@code }} closing the enclosing block
+     */
+    private int skipLine(int depth) {
+        while (pos < length) {
+            int next = skipComments(pos);
+            if (next != pos) {
+                pos = next;
+                continue;
+            }
+            char c = src.charAt(pos);
+            if (isLineBreak(c)) {
+                break;
+            }
+            if (c == '{') {
+                depth++;
+            } else if (c == '}') {
+                if (depth == 0) {
+                    break;
+                }
+                depth--;
+            }
+            pos++;
+        }
+        return depth;
+    }
+
+    /**
+     * Outside blocks braces mean nothing; just skip to the next line.
+     */
+    private void skipTopLevelLine() {
+        while (pos < length) {
+            int next = skipComments(pos);
+            if (next != pos) {
+                pos = next;
+                continue;
+            }
+            char c = src.charAt(pos);
+            if (isLineBreak(c)) {
+                return;
+            }
+            hasContent |= !Character.isWhitespace(c);
+            pos++;
+        }
+    }
+
+    private void skipSpace(boolean acrossLines) {
+        while (pos < length) {
+            int next = skipComments(pos);
+            if (next != pos) {
+                pos = next;
+                continue;
+            }
+            char c = src.charAt(pos);
+            if (!isSpace(c) || (!acrossLines && isLineBreak(c))) {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    /**
+     * @return the index after the comment starting at {@code i}, or {@code i} if none does
+     */
+    private int skipComments(int i) {
+        if (i + 1 >= length || src.charAt(i) != '/' || src.charAt(i + 1) != '*') {
+            return i;
+        }
+        if (lastCommentEnd < i + 2) {
+            error(i, "unclosed comment");
+            return i;
+        }
+        return src.indexOf("*/", i + 2) + 2;
+    }
+
+    /**
+     * {@code src[start, end)} without comments and with line breaks normalized to {@code \n}.
+     */
+    private String text(int start, int end) {
+        if (nextComment < start) {
+            nextComment = indexOrLength(src.indexOf("/*", start));
+        }
+        if (nextCarriageReturn < start) {
+            nextCarriageReturn = indexOrLength(src.indexOf('\r', start));
+        }
+        if (nextComment >= end && nextCarriageReturn >= end) {
+            return src.substring(start, end);
+        }
+        StringBuilder sb = new StringBuilder(end - start);
+        int i = start;
+        while (i < end) {
+            int next = skipComments(i);
+            if (next != i) {
+                i = next;
+                continue;
+            }
+            char c = src.charAt(i);
+            if (c == '\r') {
+                sb.append('\n');
+                if (i + 1 < end && src.charAt(i + 1) == '\n') {
+                    i++;
+                }
+            } else {
+                sb.append(c);
+            }
+            i++;
+        }
+        return sb.toString();
+    }
+
+    private int indexOrLength(int index) {
+        return index < 0 ? length : index;
+    }
+
+    private void unclosed(int open) {
+        error(open, "unclosed '{'");
+        pos = length;
+    }
+
+    private void error(int at, String message) {
+        if (strict) {
+            int line = 1;
+            int lineStart = 0;
+            for (int i = 0; i < at && i < length; i++) {
+                char c = src.charAt(i);
+                if (c == '\n' || (c == '\r' && (i + 1 >= length || src.charAt(i + 1) != '\n'))) {
+                    line++;
+                    lineStart = i + 1;
+                }
+            }
+            throw new DslParseException(message, line, at - lineStart + 1);
+        }
+    }
+
+    private static boolean isNameChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '-';
+    }
+
+    /**
+     * Whitespace as in a regex {@code \s}.
+     */
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static boolean isLineBreak(char c) {
+        return c == '\n' || c == '\r';
+    }
+
+    private static List<String> splitPathPatterns(String pathPatternStr) {
+        List<String> patterns = new ArrayList<>();
+        if (StringUtils.isBlank(pathPatternStr)) {
+            return patterns;
+        }
+        String[] parts = pathPatternStr.split("\\|\\|");
+        for (String part : parts) {
+            String pattern = part.trim();
+            if (StringUtils.isNotBlank(pattern)) {
+                patterns.add(pattern);
+            }
+        }
+        if (patterns.isEmpty()) {
+            patterns.add(pathPatternStr.trim());
+        }
+        return patterns;
+    }
+
+    private static List<String> extractAllOptionTokens(String text) {
+        List<String> tokens = new ArrayList<>();
+        int from = 0;
+        int open;
+        while ((open = text.indexOf('[', from)) >= 0) {
+            int close = findOptionEnd(text, open);
+            if (close < 0) {
+                break;
+            }
+            tokens.add(text.substring(open + 1, close).trim());
+            from = close + 1;
+        }
+        return tokens;
+    }
+
+    private static String stripOptionTokens(String text) {
+        if (text.indexOf('[') < 0) {
+            return text;
+        }
+        StringBuilder sb = new StringBuilder(text.length());
+        int from = 0;
+        int open;
+        while ((open = text.indexOf('[', from)) >= 0) {
+            int close = findOptionEnd(text, open);
+            if (close < 0) {
+                break;
+            }
+            sb.append(text, from, open);
+            from = close + 1;
+        }
+        return sb.append(text, from, text.length()).toString();
+    }
+
+    /**
+     * @see #findOptionEnd(int)
+     */
+    private static int findOptionEnd(String text, int openIndex) {
+        char quote = 0;
+        int firstClose = -1;
+        for (int i = openIndex + 1; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == ']' && firstClose < 0) {
+                firstClose = i;
+            }
+            if (quote != 0) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == quote) {
+                    quote = 0;
+                }
+            } else if ((c == '"' || c == '\'') && startsQuotedValue(text, i, openIndex + 1)) {
+                quote = c;
+            } else if (c == ']') {
+                return i;
+            }
+        }
+        return firstClose;
+    }
+
+    /**
+     * Whether the quote at {@code i} opens a quoted value, i.e. follows {@code :}, {@code ,} or
+     * {@code (} (spaces aside). An apostrophe inside plain text, as in {@code Tom's pick}, does not.
+     */
+    private static boolean startsQuotedValue(String text, int i, int start) {
+        int j = i - 1;
+        while (j >= start && Character.isWhitespace(text.charAt(j))) {
+            j--;
+        }
+        if (j < start) {
+            return false;
+        }
+        char previous = text.charAt(j);
+        return previous == ':' || previous == ',' || previous == '(';
+    }
+
+    private static void parseOptionToken(String token, RuleNode.Options options) {
+        if (token == null || token.isEmpty()) return;
+
+        for (String part : splitOptionPairs(token)) {
+            int colon = part.indexOf(':');
+            if (colon < 0) {
+                options.putIfAbsent(part.trim(), true);
+            } else {
+                options.putIfAbsent(part.substring(0, colon).trim(),
+                        trimWrappingQuotes(part.substring(colon + 1).trim()));
+            }
+        }
+    }
+
+    /**
+     * Splits {@code key:value} pairs on commas that are outside quotes and parentheses, so
+     * transform arguments such as {@code replace(',', '')} stay in one value.
+     */
+    private static List<String> splitOptionPairs(String token) {
+        List<String> parts = new ArrayList<>();
+        int depth = 0;
+        char quote = 0;
+        int start = 0;
+        for (int i = 0; i < token.length(); i++) {
+            char c = token.charAt(i);
+            if (quote != 0) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == quote) {
+                    quote = 0;
+                }
+            } else if ((c == '"' || c == '\'') && startsQuotedValue(token, i, 0)) {
+                quote = c;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == ',' && depth == 0) {
+                parts.add(token.substring(start, i));
+                start = i + 1;
+            }
+        }
+        parts.add(token.substring(start));
+        return parts;
+    }
+
+    private static String trimWrappingQuotes(String value) {
+        if (value == null || value.length() < 2) {
+            return value;
+        }
+        char first = value.charAt(0);
+        char last = value.charAt(value.length() - 1);
+        if ((first == '"' && last == '"') || (first == '\'' && last == '\'')) {
+            return value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,100 @@
+package tv.tvai.like;
+
+import tv.tvai.like.util.DaemonThreadFactory;
+
+import java.util.Collections;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs background revalidations of expired hub DSLs for stale-while-revalidate. Each refresh
+ * starts after a random delay of up to {@code maxJitterMillis}, so entries that expire together
+ * do not hit the hub in a burst; a url already waiting or refreshing is not scheduled again, and
+ * once {@code maxPending} refreshes are queued or running further requests are dropped. A
+ * dropped refresh costs nothing: the entry stays stale and the next lookup asks again.
+ */
+final class DslRefresher {
+
+    static final int DEFAULT_THREADS = 2;
+    static final int DEFAULT_MAX_PENDING = 32;
+    static final long DEFAULT_MAX_JITTER_MILLIS = 2_000;
+
+    private static final Random RANDOM = new Random();
+    private static volatile DslRefresher shared;
+
+    private final ScheduledThreadPoolExecutor executor;
+    private final int maxPending;
+    private final long maxJitterMillis;
+    private final Set<String> pending = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    DslRefresher(int threads, int maxPending, long maxJitterMillis) {
+        this.executor = new ScheduledThreadPoolExecutor(threads, new DaemonThreadFactory("tv-like-refresh-"));
+        this.executor.setKeepAliveTime(30, TimeUnit.SECONDS);
+        this.executor.allowCoreThreadTimeOut(true);
+        this.maxPending = maxPending;
+        this.maxJitterMillis = maxJitterMillis;
+    }
+
+    /**
+     * The refresher of every {@link TVLikeDSL} not given its own, created on first use.
+     */
+    static DslRefresher shared() {
+        DslRefresher refresher = shared;
+        if (refresher == null) {
+            synchronized (DslRefresher.class) {
+                refresher = shared;
+                if (refresher == null) {
+                    refresher = new DslRefresher(DEFAULT_THREADS, DEFAULT_MAX_PENDING, DEFAULT_MAX_JITTER_MILLIS);
+                    shared = refresher;
+                }
+            }
+        }
+        return refresher;
+    }
+
+    /**
+     * @return whether {@code refresh} was scheduled; {@code false} if {@code url} is already
+     * pending or the pending cap is reached
+     */
+    boolean schedule(final String url, final Runnable refresh) {
+        if (!pending.add(url)) {
+            return false;
+        }
+        if (pendingCount.incrementAndGet() > maxPending) {
+            release(url);
+            return false;
+        }
+        long delay = maxJitterMillis > 0 ? RANDOM.nextInt((int) Math.min(maxJitterMillis + 1, Integer.MAX_VALUE)) : 0;
+        try {
+            executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        refresh.run();
+                    } finally {
+                        release(url);
+                    }
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (RejectedExecutionException e) {
+            release(url);
+            return false;
+        }
+    }
+
+    int pendingCount() {
+        return pendingCount.get();
+    }
+
+    private void release(String url) {
+        pendingCount.decrementAndGet();
+        pending.remove(url);
+    }
+}
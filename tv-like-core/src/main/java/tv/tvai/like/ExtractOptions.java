@@ -0,0 +1,24 @@
+package tv.tvai.like;
+
+/**
+ * Document-level settings for a single {@link Extractor} run.
+ */
+public class ExtractOptions {
+
+    private int maxSections = -1;
+
+    /**
+     * Maximum number of sections to extract from one document; negative means unlimited.
+     */
+    public int getMaxSections() {
+        return maxSections;
+    }
+
+    /**
+     * Stops the document walk as soon as {@code maxSections} sections have been extracted.
+     * Negative values mean unlimited.
+     */
+    public void setMaxSections(int maxSections) {
+        this.maxSections = maxSections < 0 ? -1 : maxSections;
+    }
+}
@@ -0,0 +1,37 @@
+package tv.tvai.like;
+
+import java.util.Map;
+
+/**
+ * Receives extraction results while {@link Extractor} walks the document, so callers can build
+ * their own output without going through the default {@code List<Map<String, Object>>}.
+ * <p>
+ * Calls arrive in document order and are properly nested:
+ * <pre>
+ * beginSection (field)* [beginItems (beginItem field+ endItem)+ endItems] endSection
+ * </pre>
+ * Fields come in the order of the rule's compiled field list. Items without any field and
+ * {@code items} blocks without any item are never reported. The option maps are the rule's
+ * exported (non-executable) options; they are shared and read-only.
+ *
+ * @see MapExtractionSink
+ */
+public interface ExtractionSink {
+
+    void beginSection(String name, Map<String, Object> options);
+
+    /**
+     * @param value the transformed, trimmed, non-blank field value
+     */
+    void field(String name, String value, Map<String, Object> options);
+
+    void beginItems(Map<String, Object> options);
+
+    void beginItem();
+
+    void endItem();
+
+    void endItems();
+
+    void endSection();
+}
@@ -4,182 +4,236 @@ import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.nodes.Node;
 import org.jsoup.select.Elements;
-import tv.tvai.like.enums.OptionKeyEnum;
+import tv.tvai.like.transform.Transform;
+import tv.tvai.like.transform.Transforms;
 import tv.tvai.like.util.StringUtils;
 
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 public class Extractor {
 
+    private final ExtractOptions options;
+
+    public Extractor() {
+        this(null);
+    }
+
+    public Extractor(ExtractOptions options) {
+        this.options = options == null ? new ExtractOptions() : options;
+    }
+
     public List<Map<String, Object>> extract(Document doc, List<RuleNode> rules) {
-        List<Map<String, Object>> result = new ArrayList<>();
-        if (doc == null || rules == null || rules.isEmpty()) {
-            return result;
+        return this.extract(doc, rules, (Cancellation) null);
+    }
+
+    /**
+     * Streams the results into {@code sink} instead of building maps.
+     */
+    public void extract(Document doc, List<RuleNode> rules, ExtractionSink sink) {
+        this.extract(doc, rules, sink, null);
+    }
+
+    /**
+     * @param cancellation stops the walk at the next element once cancelled; may be {@code null}
+     */
+    List<Map<String, Object>> extract(Document doc, List<RuleNode> rules, Cancellation cancellation) {
+        MapExtractionSink sink = new MapExtractionSink();
+        this.extract(doc, rules, sink, cancellation);
+        return sink.getResult();
+    }
+
+    void extract(Document doc, List<RuleNode> rules, ExtractionSink sink, Cancellation cancellation) {
+        if (doc == null || rules == null || rules.isEmpty() || sink == null) {
+            return;
+        }
+        RuleIndex index = this.indexOf(rules);
+        if (index.size() == 0) {
+            return;
         }
         Node root = doc.body() != null ? doc.body() : doc;
-        this.traverse(root, rules, result, new LinkedHashMap<RuleNode, Integer>());
-        return result;
+        AncestorFilter ancestors = null;
+        if (index.usesAncestorFilter()) {
+            ancestors = new AncestorFilter();
+            ancestors.pushAncestorsOf((Element) root);
+        }
+        Walk walk = new Walk(index, ancestors, sink, options.getMaxSections(), cancellation);
+        for (int i = 0; i < index.size(); i++) {
+            if (this.hasReachedLimit(index.rule(i).getLimit(), 0)) {
+                walk.openRules--;
+            }
+        }
+        if (!walk.isDone()) {
+            this.traverse(root, walk);
+        }
     }
 
-    private void traverse(Node node,
-                          List<RuleNode> rules,
-                          List<Map<String, Object>> result,
-                          Map<RuleNode, Integer> matchedSectionCounts) {
-        if (node instanceof Element) {
-            Element el = (Element) node;
-            for (RuleNode rule : rules) {
-                if (this.hasReachedLimit(rule, matchedSectionCounts)) {
-                    continue;
-                }
-                boolean matches = this.matches(el, rule.getSelector());
-                if (matches) {
-                    Map<String, Object> parsed = new LinkedHashMap<>();
-                    parsed.put("section", rule.getName());
-                    this.copyNonExecutableOptions(rule.getSectionOptions(), parsed);
-                    Map<String, Object> map = this.extractSection(el, rule);
-                    parsed.putAll(map);
-                    result.add(parsed);
-                    this.incrementMatchedCount(rule, matchedSectionCounts);
-                }
+    private RuleIndex indexOf(List<RuleNode> rules) {
+        if (rules instanceof CompiledRuleList) {
+            return ((CompiledRuleList) rules).index();
+        }
+        List<RuleNode> compiled = new ArrayList<>(rules.size());
+        for (RuleNode rule : rules) {
+            if (rule != null && rule.compile()) {
+                compiled.add(rule);
             }
         }
+        return RuleIndex.build(compiled);
+    }
+
+    /**
+     * State of one document walk. The walk is done once every rule has hit its section
+     * {@code limit} or the document-wide section budget is spent, at which point the remaining
+     * nodes are not visited at all. A cancelled walk is done as well.
+     */
+    private static final class Walk {
+        private final RuleIndex index;
+        private final RuleIndex.Candidates candidates = new RuleIndex.Candidates();
+        private final AncestorFilter ancestors;
+        private final ExtractionSink sink;
+        private final int[] matched;
+        private int openRules;
+        private int sectionBudget;
+        private final Cancellation cancellation;
+
+        private Walk(RuleIndex index, AncestorFilter ancestors, ExtractionSink sink, int maxSections,
+                     Cancellation cancellation) {
+            this.index = index;
+            this.ancestors = ancestors;
+            this.sink = sink;
+            this.matched = new int[index.size()];
+            this.openRules = index.size();
+            this.sectionBudget = maxSections;
+            this.cancellation = cancellation;
+        }
 
-        for (Node child : node.childNodes()) {
-            this.traverse(child, rules, result, matchedSectionCounts);
+        private boolean isDone() {
+            return openRules == 0 || sectionBudget == 0 || (cancellation != null && cancellation.isCancelled());
         }
     }
 
-    private boolean matches(Element el, String selector) {
-        if (el == null || StringUtils.isBlank(selector)) {
-            return false;
+    private void traverse(Node node, Walk walk) {
+        if (!(node instanceof Element)) {
+            return;
         }
-        try {
-            return el.is(selector);
-        } catch (Exception e) {
-            return false;
+        Element el = (Element) node;
+        RuleIndex index = walk.index;
+        RuleIndex.Candidates candidates = walk.candidates;
+        index.candidates(el, candidates);
+        for (int c = 0; c < candidates.size; c++) {
+            int ruleIndex = candidates.indexes[c];
+            RuleNode rule = index.rule(ruleIndex);
+            if (this.hasReachedLimit(rule.getLimit(), walk.matched[ruleIndex])) {
+                continue;
+            }
+            if (walk.ancestors != null && !index.mayMatchUnder(ruleIndex, walk.ancestors)) {
+                continue;
+            }
+            boolean matches = el.is(rule.getEvaluator());
+            if (matches) {
+                walk.sink.beginSection(rule.getName(), rule.getExportedOptions());
+                this.extractSection(el, rule, walk.sink);
+                walk.sink.endSection();
+                walk.matched[ruleIndex]++;
+                if (this.hasReachedLimit(rule.getLimit(), walk.matched[ruleIndex])) {
+                    walk.openRules--;
+                }
+                if (walk.sectionBudget > 0) {
+                    walk.sectionBudget--;
+                }
+                if (walk.isDone()) {
+                    return;
+                }
+            }
         }
-    }
 
-    private Map<String, Object> extractSection(Element el, RuleNode rule) {
-        Map<String, Object> result = new LinkedHashMap<>();
+        if (el.childNodeSize() == 0) {
+            return;
+        }
+        if (walk.ancestors != null) {
+            walk.ancestors.push(el);
+        }
+        for (Node child : el.childNodes()) {
+            this.traverse(child, walk);
+            if (walk.isDone()) {
+                return;
+            }
+        }
+        if (walk.ancestors != null) {
+            walk.ancestors.pop(el);
+        }
+    }
 
-        this.extractFields(el, rule, result);
+    private void extractSection(Element el, RuleNode rule, ExtractionSink sink) {
+        this.extractFields(el, rule, sink);
 
         RuleNode itemTemplateRule = rule.getItemTemplate();
         if (itemTemplateRule != null) {
-            Elements elements = this.selectElements(el, itemTemplateRule.getSelector());
-            List<Map<String, Object>> items = new ArrayList<>();
+            Elements elements = el.select(itemTemplateRule.getEvaluator());
+            boolean itemsOpen = false;
 
-            long limit = this.resolveLimit(itemTemplateRule);
+            long limit = itemTemplateRule.getLimit();
             int i = 0;
             for (Element itemEl : elements) {
                 if (this.hasReachedLimit(limit, i)) break;
-                Map<String, Object> itemMap = new LinkedHashMap<>();
-                this.extractFields(itemEl, itemTemplateRule, itemMap);
-                if (!itemMap.isEmpty()) {
-                    items.add(itemMap);
+                if (this.extractItem(itemEl, itemTemplateRule, sink, itemsOpen)) {
+                    itemsOpen = true;
                     i++;
                 }
             }
-            if (!items.isEmpty()) {
-                Result itemsResult = new Result(items);
-                result.put("items", itemsResult);
-                this.copyNonExecutableOptions(itemTemplateRule.getSectionOptions(), itemsResult);
+            if (itemsOpen) {
+                sink.endItems();
             }
         }
-
-        return result;
     }
 
-    private void extractFields(Element el, RuleNode rule, Map<String, Object> out) {
-        if (el == null || rule == null || out == null || rule.getFieldSelectors() == null) {
-            return;
-        }
-        for (Map.Entry<String, String> en : rule.getFieldSelectors().entrySet()) {
-            String field = en.getKey();
-            String selector = en.getValue();
-            if (selector == null) continue;
-
-            Result value = this.extractValue(el, field, selector, rule);
-            if (value != null && !value.isEmpty() && !out.containsKey(field)) {
-                out.put(field, value);
+    private void extractFields(Element el, RuleNode rule, ExtractionSink sink) {
+        for (RuleNode.Field field : rule.getFields()) {
+            String value = this.extractValue(el, field);
+            if (value != null) {
+                sink.field(field.name, value, field.exportedOptions);
             }
         }
     }
 
-    private long resolveLimit(RuleNode rule) {
-        RuleNode.Options sectionOptions = rule.getSectionOptions();
-        if (sectionOptions == null || sectionOptions.getValues() == null || sectionOptions.getValues().isEmpty() || !sectionOptions.getValues().containsKey(OptionKeyEnum.LIMIT.getKey())) {
-            return -1;
+    /**
+     * Reports one item, opening the {@code items} block first if this is its first item. Nothing
+     * is reported for an element without any non-blank field.
+     *
+     * @return whether the item was reported
+     */
+    private boolean extractItem(Element el, RuleNode rule, ExtractionSink sink, boolean itemsOpen) {
+        RuleNode.Field[] fields = rule.getFields();
+        int f = 0;
+        String value = null;
+        while (f < fields.length && (value = this.extractValue(el, fields[f])) == null) {
+            f++;
         }
-        try {
-            return Long.parseLong(sectionOptions.getValues().get(OptionKeyEnum.LIMIT.getKey()).toString().trim());
-        } catch (Exception e) {
-            return -1;
+        if (value == null) {
+            return false;
         }
+        if (!itemsOpen) {
+            sink.beginItems(rule.getExportedOptions());
+        }
+        sink.beginItem();
+        sink.field(fields[f].name, value, fields[f].exportedOptions);
+        for (f++; f < fields.length; f++) {
+            value = this.extractValue(el, fields[f]);
+            if (value != null) {
+                sink.field(fields[f].name, value, fields[f].exportedOptions);
+            }
+        }
+        sink.endItem();
+        return true;
     }
 
-    private String resolveAttr(RuleNode rule, String field) {
-        return resolve(rule, field, OptionKeyEnum.ATTR.getKey());
-    }
-
-    private String resolve(RuleNode rule, String field, String key) {
-        Map<String, RuleNode.Options> fieldOptions = rule.getFieldOptions();
-        if (fieldOptions == null) return null;
-
-        RuleNode.Options opt = fieldOptions.get(field);
-        if (opt == null) return null;
-
-        Map<String, Object> values = getFieldOptions(rule, field);
-        if (values == null) return null;
-
-        Object value = values.get(key);
-        return value == null ? null : value.toString();
-    }
-
-    private Map<String, Object> getFieldOptions(RuleNode rule, String field) {
-        Map<String, RuleNode.Options> fieldOptions = rule.getFieldOptions();
-        if (fieldOptions == null) return null;
-
-        RuleNode.Options opt = fieldOptions.get(field);
-        if (opt == null) return null;
-
-        return opt.getValues();
-    }
-
-    private Result extractValue(Element el, String field, String selector, RuleNode rule) {
-        Element target = this.selectFirst(el, selector);
+    private String extractValue(Element el, RuleNode.Field field) {
+        Element target = el.selectFirst(field.evaluator);
         if (target == null) return null;
-        String attr = this.resolveAttr(rule, field);
-        String value;
-        switch (field) {
-            case "text":
-                if (attr != null) {
-                    value = this.selectAttr(target, attr);
-                } else {
-                    value = this.selectText(target);
-                }
-                break;
-            case "img":
-                value = this.selectAttr(target, attr == null ? "src" : attr);
-                break;
-            case "link":
-                value = this.selectAttr(target, attr == null ? "href" : attr);
-                break;
-            default:
-                value = null;
-        }
-        value = this.applyTransforms(value, target, attr == null ? this.defaultAttr(field) : attr, rule, field);
-        if (StringUtils.isBlank(value)) return null;
-
-        Result fv = new Result(value);
-
-        Map<String, Object> fieldOptions = this.getFieldOptions(rule, field);
-        this.copyNonExecutableOptions(fieldOptions, fv);
-        return fv;
+        String value = field.attr == null ? this.selectText(target) : this.selectAttr(target, field.attr);
+        value = this.applyTransforms(value, target, field.attr, field.transforms);
+        return StringUtils.isBlank(value) ? null : value;
     }
 
     private String selectText(Element element) {
@@ -190,112 +244,15 @@ public class Extractor {
         return element != null && StringUtils.isNotBlank(attr) ? element.attr(attr).trim() : null;
     }
 
-    private Element selectFirst(Element element, String selector) {
-        if (element == null || StringUtils.isBlank(selector)) {
-            return null;
-        }
-        try {
-            return element.selectFirst(selector);
-        } catch (Exception e) {
-            return null;
-        }
-    }
-
-    private Elements selectElements(Element element, String selector) {
-        if (element == null || StringUtils.isBlank(selector)) {
-            return new Elements();
-        }
-        try {
-            return element.select(selector);
-        } catch (Exception e) {
-            return new Elements();
-        }
-    }
-
-    private void copyNonExecutableOptions(RuleNode.Options options, Map<String, Object> target) {
-        if (options == null) {
-            return;
-        }
-        this.copyNonExecutableOptions(options.getValues(), target);
-    }
-
-    private void copyNonExecutableOptions(Map<String, Object> options, Map<String, Object> target) {
-        if (options == null || options.isEmpty() || target == null) {
-            return;
-        }
-        for (Map.Entry<String, Object> entry : options.entrySet()) {
-            if (!OptionKeyEnum.executable(entry.getKey())) {
-                target.put(entry.getKey(), entry.getValue());
-            }
-        }
-    }
-
-    private boolean hasReachedLimit(RuleNode rule, Map<RuleNode, Integer> matchedSectionCounts) {
-        return this.hasReachedLimit(this.resolveLimit(rule), matchedSectionCounts.get(rule) == null ? 0 : matchedSectionCounts.get(rule));
-    }
-
     private boolean hasReachedLimit(long limit, int currentCount) {
         return limit >= 0 && currentCount >= limit;
     }
 
-    private void incrementMatchedCount(RuleNode rule, Map<RuleNode, Integer> matchedSectionCounts) {
-        Integer count = matchedSectionCounts.get(rule);
-        matchedSectionCounts.put(rule, count == null ? 1 : count + 1);
-    }
-
-    private String defaultAttr(String field) {
-        if ("img".equals(field)) {
-            return "src";
-        }
-        if ("link".equals(field)) {
-            return "href";
-        }
-        return null;
-    }
-
-    private String applyTransforms(String value, Element target, String attr, RuleNode rule, String field) {
+    private String applyTransforms(String value, Element target, String attr, Transform[] transforms) {
         if (value == null) {
             return null;
         }
-        String transformed = value;
-        String transformValue = this.resolve(rule, field, OptionKeyEnum.TRANSFORM.getKey());
-        if (StringUtils.isBlank(transformValue)) {
-            return transformed.trim();
-        }
-        String[] transforms = transformValue.split("\\|");
-        for (String transform : transforms) {
-            transformed = this.applyTransform(transformed, transform == null ? "" : transform.trim(), target, attr);
-            if (transformed == null) {
-                return null;
-            }
-        }
-        return transformed.trim();
-    }
-
-    private String applyTransform(String value, String transform, Element target, String attr) {
-        if (StringUtils.isBlank(transform)) {
-            return value;
-        }
-        if ("trim".equalsIgnoreCase(transform)) {
-            return value.trim();
-        }
-        if ("lower".equalsIgnoreCase(transform) || "lower-case".equalsIgnoreCase(transform)) {
-            return value.toLowerCase();
-        }
-        if ("upper".equalsIgnoreCase(transform) || "upper-case".equalsIgnoreCase(transform)) {
-            return value.toUpperCase();
-        }
-        if ("digits".equalsIgnoreCase(transform)) {
-            String digitsOnly = value.replaceAll("[^0-9]", "");
-            return digitsOnly.isEmpty() ? null : digitsOnly;
-        }
-        if ("abs-url".equalsIgnoreCase(transform)) {
-            if (target == null || StringUtils.isBlank(attr)) {
-                return value;
-            }
-            String absUrl = target.absUrl(attr);
-            return StringUtils.isNotBlank(absUrl) ? absUrl.trim() : value;
-        }
-        return value;
+        String transformed = Transforms.apply(transforms, value, target, attr);
+        return transformed == null ? null : transformed.trim();
     }
 }
@@ -0,0 +1,59 @@
+package tv.tvai.like;
+
+import java.net.HttpURLConnection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Handle on an in-flight hub request that another thread can abort. Aborting disconnects the
+ * underlying connection, which unblocks a thread stuck in connect or read.
+ * <p>
+ * Every call carries the {@link System#nanoTime()} deadline of the lookup it belongs to; the
+ * calls of one lookup share it, so the lookup as a whole is bounded however many candidates it tries.
+ */
+class HubCall {
+
+    private final long deadlineNanos;
+    private volatile HttpURLConnection connection;
+    private volatile boolean aborted;
+
+    HubCall(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * A call whose deadline is {@code timeoutMillis} from now.
+     */
+    static HubCall withTimeout(long timeoutMillis) {
+        return new HubCall(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+    }
+
+    void attach(HttpURLConnection conn) {
+        this.connection = conn;
+        if (aborted) {
+            conn.disconnect();
+        }
+    }
+
+    void abort() {
+        aborted = true;
+        HttpURLConnection conn = connection;
+        if (conn != null) {
+            conn.disconnect();
+        }
+    }
+
+    boolean isAborted() {
+        return aborted;
+    }
+
+    long getDeadlineNanos() {
+        return deadlineNanos;
+    }
+
+    /**
+     * @return milliseconds left until the deadline, or 0 once it has passed
+     */
+    long remainingMillis() {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+    }
+}
@@ -0,0 +1,183 @@
+package tv.tvai.like;
+
+import tv.tvai.like.util.DaemonThreadFactory;
+import tv.tvai.like.util.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * HTTP client for the hub. Requests go through {@link HttpURLConnection}, whose connection pool
+ * is what keeps sockets alive between requests, so the client makes sure a connection can go
+ * back to it: bodies, including error bodies, are read to the end and closed, and only failed or
+ * aborted requests {@code disconnect()}.
+ * <p>
+ * Responses are requested gzip-compressed and read in bulk into a buffer sized from
+ * {@code Content-Length}. Each request is bounded by the deadline of its {@link HubCall}: connect
+ * and read timeouts are capped by the time left, and a watchdog aborts the call when the deadline
+ * passes, so a slowly trickling body cannot outlive it either.
+ */
+final class HubClient {
+
+    static final String TEXT_PLAIN = "text/plain";
+    static final String JSON = "application/json";
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 10_000;
+    private static final String USER_AGENT = "Mozilla/5.0";
+    private static final int MIN_BUFFER = 8 * 1024;
+    private static final int MAX_PRESIZED_BUFFER = 1024 * 1024;
+    private static volatile ScheduledThreadPoolExecutor watchdog;
+
+    private HubClient() {
+    }
+
+    /**
+     * Conditional GET; {@code etag} and {@code lastModified} may be {@code null}.
+     */
+    static HubResponse get(String url, String accept, String etag, String lastModified, HubCall call) {
+        return execute("GET", url, accept, etag, lastModified, null, call);
+    }
+
+    static HubResponse postJson(String url, String json, HubCall call) {
+        byte[] body = (json == null ? "" : json).getBytes(StandardCharsets.UTF_8);
+        return execute("POST", url, JSON, null, null, body, call);
+    }
+
+    private static HubResponse execute(String method, String urlStr, String accept, String etag,
+                                       String lastModified, byte[] body, final HubCall call) {
+        if (StringUtils.isBlank(urlStr) || call.isAborted()) {
+            return HubResponse.FAILED;
+        }
+        long remaining = call.remainingMillis();
+        if (remaining <= 0) {
+            return HubResponse.FAILED;
+        }
+        HttpURLConnection conn = null;
+        ScheduledFuture<?> timer = null;
+        try {
+            conn = (HttpURLConnection) new URL(urlStr).openConnection();
+            call.attach(conn);
+            timer = watchdog().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    call.abort();
+                }
+            }, remaining, TimeUnit.MILLISECONDS);
+
+            conn.setRequestMethod(method);
+            conn.setConnectTimeout((int) Math.min(CONNECT_TIMEOUT_MILLIS, remaining));
+            conn.setReadTimeout((int) Math.min(Integer.MAX_VALUE, remaining));
+            conn.setUseCaches(false);
+            conn.setRequestProperty("User-Agent", USER_AGENT);
+            conn.setRequestProperty("Accept", accept);
+            conn.setRequestProperty("Accept-Encoding", "gzip");
+            if (StringUtils.isNotBlank(etag)) {
+                conn.setRequestProperty("If-None-Match", etag);
+            }
+            if (StringUtils.isNotBlank(lastModified)) {
+                conn.setRequestProperty("If-Modified-Since", lastModified);
+            }
+            if (body != null) {
+                conn.setDoOutput(true);
+                conn.setFixedLengthStreamingMode(body.length);
+                conn.setRequestProperty("Content-Type", JSON + "; charset=utf-8");
+                try (OutputStream os = conn.getOutputStream()) {
+                    os.write(body);
+                }
+            }
+
+            int code = conn.getResponseCode();
+            String text = null;
+            if (code >= 200 && code < 300) {
+                text = readBody(conn);
+            } else {
+                drain(conn.getErrorStream());
+            }
+            return new HubResponse(code, text, conn.getHeaderField("ETag"), conn.getHeaderField("Last-Modified"));
+        } catch (Exception e) {
+            if (conn != null) {
+                conn.disconnect();
+            }
+            return HubResponse.FAILED;
+        } finally {
+            if (timer != null) {
+                timer.cancel(false);
+                // Leave no cancelled timer queued until its deadline; setRemoveOnCancelPolicy needs API 21.
+                watchdog().remove((Runnable) timer);
+            }
+        }
+    }
+
+    /**
+     * Reads the whole body, gunzipping it if needed, and decodes it as UTF-8.
+     */
+    private static String readBody(HttpURLConnection conn) throws IOException {
+        boolean gzip = "gzip".equalsIgnoreCase(conn.getContentEncoding());
+        int length = conn.getContentLength();
+        int capacity = MIN_BUFFER;
+        if (length >= 0) {
+            // A compressed DSL typically inflates four- to eightfold.
+            capacity = (int) Math.min(MAX_PRESIZED_BUFFER, gzip ? length * 6L : length);
+        }
+        try (InputStream raw = conn.getInputStream();
+             InputStream in = gzip ? new GZIPInputStream(raw, MIN_BUFFER) : raw) {
+            byte[] bytes = new byte[Math.max(capacity, 1)];
+            int size = 0;
+            while (true) {
+                if (size == bytes.length) {
+                    // Only grow once the stream proves to be longer than expected.
+                    int b = in.read();
+                    if (b < 0) {
+                        break;
+                    }
+                    bytes = Arrays.copyOf(bytes, Math.max(MIN_BUFFER, bytes.length * 2));
+                    bytes[size++] = (byte) b;
+                }
+                int n = in.read(bytes, size, bytes.length - size);
+                if (n < 0) {
+                    break;
+                }
+                size += n;
+            }
+            return new String(bytes, 0, size, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Consumes an error body so the connection can be reused.
+     */
+    private static void drain(InputStream in) throws IOException {
+        if (in == null) {
+            return;
+        }
+        try (InputStream stream = in) {
+            byte[] skip = new byte[MIN_BUFFER];
+            while (stream.read(skip) >= 0) {
+                // discard
+            }
+        }
+    }
+
+    private static ScheduledThreadPoolExecutor watchdog() {
+        ScheduledThreadPoolExecutor executor = watchdog;
+        if (executor == null) {
+            synchronized (HubClient.class) {
+                executor = watchdog;
+                if (executor == null) {
+                    executor = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("tv-like-hub-deadline-"));
+                    watchdog = executor;
+                }
+            }
+        }
+        return executor;
+    }
+}
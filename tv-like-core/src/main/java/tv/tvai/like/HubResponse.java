@@ -0,0 +1,56 @@
+package tv.tvai.like;
+
+/**
+ * Outcome of a single hub request. A negative status means the request never got an answer.
+ */
+final class HubResponse {
+
+    static final HubResponse FAILED = new HubResponse(-1, null, null, null);
+
+    private final int status;
+    private final String body;
+    private final String etag;
+    private final String lastModified;
+
+    HubResponse(int status, String body, String etag, String lastModified) {
+        this.status = status;
+        this.body = body;
+        this.etag = etag;
+        this.lastModified = lastModified;
+    }
+
+    int getStatus() {
+        return status;
+    }
+
+    String getBody() {
+        return body;
+    }
+
+    String getEtag() {
+        return etag;
+    }
+
+    String getLastModified() {
+        return lastModified;
+    }
+
+    boolean isSuccessful() {
+        return status >= 200 && status < 300;
+    }
+
+    boolean isNotModified() {
+        return status == 304;
+    }
+
+    boolean isFailed() {
+        return status < 0;
+    }
+
+    /**
+     * True when the hub gave no definitive answer, e.g. a timeout or a server error.
+     */
+    boolean isTransient() {
+        return status < 0 || status == 429 || status >= 500;
+    }
+}
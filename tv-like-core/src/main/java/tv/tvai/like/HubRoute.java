@@ -0,0 +1,43 @@
+package tv.tvai.like;
+
+/**
+ * What the hub is known to hold for a host: either the candidate url that answered last time,
+ * or the fact that none of the candidates had a DSL.
+ */
+public final class HubRoute {
+
+    private final String url;
+    private final long expiresAt;
+
+    private HubRoute(String url, long expiresAt) {
+        this.url = url;
+        this.expiresAt = expiresAt;
+    }
+
+    public static HubRoute hit(String url, long expiresAt) {
+        return new HubRoute(url, expiresAt);
+    }
+
+    public static HubRoute miss(long expiresAt) {
+        return new HubRoute(null, expiresAt);
+    }
+
+    /**
+     * The winning candidate url, or {@code null} for a negative entry.
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    public boolean isMiss() {
+        return url == null;
+    }
+
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    public boolean isExpired(long now) {
+        return now >= expiresAt;
+    }
+}
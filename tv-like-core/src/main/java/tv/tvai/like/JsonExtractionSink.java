@@ -0,0 +1,338 @@
+package tv.tvai.like;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Writes extraction results as JSON while the document is walked. The output is byte-identical
+ * to serializing the {@link MapExtractionSink} result with Jackson's default {@code ObjectMapper}:
+ * sections keep insertion order, and each {@link Result} object lists {@code value} and its
+ * options in {@code Result} iteration order.
+ * <p>
+ * A field or {@code items} block named like one of the section's exported options replaces that
+ * option in place, as {@code Map.put} does. Which fields show up is only known once the section
+ * has been walked, so a section with exported options is held back from its first option to its
+ * end; sections without any are written straight through.
+ * <p>
+ * Sink callbacks cannot throw {@link IOException}; the first write failure is remembered, further
+ * output is skipped, and {@link #finish()} rethrows it.
+ */
+public class JsonExtractionSink implements ExtractionSink {
+
+    private static final String VALUE_KEY = "value";
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    private static final String[] VALUE_ONLY = {VALUE_KEY};
+
+    private final Writer out;
+    /**
+     * Where output currently goes: {@link #out}, the held-back section body, or the value of a
+     * field or {@code items} block that replaces an option.
+     */
+    private Writer target;
+    /**
+     * Result key order per option map; option maps are shared per compiled rule.
+     */
+    private final Map<Map<String, Object>, String[]> keyOrders = new IdentityHashMap<>();
+    private IOException error;
+    private boolean anySection;
+    private boolean anyItem;
+    private boolean anyItemField;
+    private Map<String, Object> itemsOptions;
+    private String[] itemsKeys;
+    /**
+     * Exported options of the current section while it is held back, else {@code null}.
+     */
+    private Map<String, Object> sectionOptions;
+    private StringWriter sectionBody;
+    /**
+     * JSON values of the fields and {@code items} block that replace options of the held-back section.
+     */
+    private final Map<String, String> replacements = new HashMap<>();
+
+    public JsonExtractionSink(Writer out) {
+        this.out = out;
+        this.target = out;
+    }
+
+    @Override
+    public void beginSection(String name, Map<String, Object> options) {
+        write(anySection ? ",{" : "[{");
+        anySection = true;
+        writeString("section");
+        write(':');
+        // An exported option named "section" replaces the name in place, as Map.put would.
+        Object section = options.containsKey("section") ? options.get("section") : name;
+        writeValue(section);
+        if (options.size() > (options.containsKey("section") ? 1 : 0)) {
+            // The options are written at endSection, once it is known which of them are replaced.
+            sectionOptions = options;
+            sectionBody = new StringWriter();
+            target = sectionBody;
+        }
+    }
+
+    @Override
+    public void field(String name, String value, Map<String, Object> options) {
+        boolean replacesOption = itemsOptions == null && replacesOption(name);
+        if (replacesOption) {
+            target = new StringWriter();
+        } else {
+            if (itemsOptions == null || anyItemField) {
+                write(',');
+            }
+            anyItemField = true;
+            writeString(name);
+            write(':');
+        }
+        write('{');
+        String[] keys = keyOrder(options);
+        for (int i = 0; i < keys.length; i++) {
+            if (i > 0) {
+                write(',');
+            }
+            String key = keys[i];
+            writeString(key);
+            write(':');
+            writeValue(VALUE_KEY.equals(key) ? value : options.get(key));
+        }
+        write('}');
+        if (replacesOption) {
+            endReplacement(name);
+        }
+    }
+
+    @Override
+    public void beginItems(Map<String, Object> options) {
+        itemsOptions = options;
+        itemsKeys = keyOrder(options);
+        anyItem = false;
+        if (replacesOption("items")) {
+            target = new StringWriter();
+            write('{');
+        } else {
+            write(",\"items\":{");
+        }
+        // Options hashed before "value" come first, then the item array, then the rest.
+        for (int i = 0; i < itemsKeys.length; i++) {
+            String key = itemsKeys[i];
+            if (VALUE_KEY.equals(key)) {
+                if (i > 0) {
+                    write(',');
+                }
+                writeString(VALUE_KEY);
+                write(":[");
+                return;
+            }
+            if (i > 0) {
+                write(',');
+            }
+            writeString(key);
+            write(':');
+            writeValue(options.get(key));
+        }
+    }
+
+    @Override
+    public void beginItem() {
+        write(anyItem ? ",{" : "{");
+        anyItem = true;
+        anyItemField = false;
+    }
+
+    @Override
+    public void endItem() {
+        write('}');
+    }
+
+    @Override
+    public void endItems() {
+        write(']');
+        boolean afterValue = false;
+        for (String key : itemsKeys) {
+            if (afterValue) {
+                write(',');
+                writeString(key);
+                write(':');
+                writeValue(itemsOptions.get(key));
+            } else if (VALUE_KEY.equals(key)) {
+                afterValue = true;
+            }
+        }
+        write('}');
+        if (replacesOption("items")) {
+            endReplacement("items");
+        }
+        itemsOptions = null;
+        itemsKeys = null;
+    }
+
+    @Override
+    public void endSection() {
+        if (sectionOptions != null) {
+            target = out;
+            for (Map.Entry<String, Object> option : sectionOptions.entrySet()) {
+                String key = option.getKey();
+                if (!"section".equals(key)) {
+                    write(',');
+                    writeString(key);
+                    write(':');
+                    String replacement = replacements.get(key);
+                    if (replacement != null) {
+                        write(replacement);
+                    } else {
+                        writeValue(option.getValue());
+                    }
+                }
+            }
+            write(sectionBody.toString());
+            sectionOptions = null;
+            sectionBody = null;
+            replacements.clear();
+        }
+        write('}');
+    }
+
+    /**
+     * Closes the top-level array and flushes.
+     *
+     * @throws IOException the first error seen while writing
+     */
+    public void finish() throws IOException {
+        write(anySection ? "]" : "[]");
+        if (error == null) {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private boolean replacesOption(String key) {
+        return sectionOptions != null && !"section".equals(key) && sectionOptions.containsKey(key);
+    }
+
+    private void endReplacement(String key) {
+        replacements.put(key, target.toString());
+        target = sectionBody;
+    }
+
+    /**
+     * Keys of a {@link Result} holding {@code value} plus {@code options}, in iteration order.
+     */
+    private String[] keyOrder(Map<String, Object> options) {
+        if (options.isEmpty()) {
+            return VALUE_ONLY;
+        }
+        String[] keys = keyOrders.get(options);
+        if (keys == null) {
+            keys = Result.Layout.of(options).keys;
+            keyOrders.put(options, keys);
+        }
+        return keys;
+    }
+
+    private void writeValue(Object value) {
+        if (value == null) {
+            write("null");
+        } else if (value instanceof Boolean) {
+            write(value.toString());
+        } else if (value instanceof Number) {
+            // Like Jackson: numbers unquoted, except NaN and the infinities, which JSON cannot express.
+            if ((value instanceof Double && (((Double) value).isNaN() || ((Double) value).isInfinite()))
+                    || (value instanceof Float && (((Float) value).isNaN() || ((Float) value).isInfinite()))) {
+                writeString(value.toString());
+            } else {
+                write(value.toString());
+            }
+        } else {
+            writeString(value.toString());
+        }
+    }
+
+    /**
+     * Jackson's default escaping: quote, backslash and control characters only; everything else,
+     * including non-ASCII, is written as is.
+     */
+    private void writeString(String value) {
+        if (error != null) {
+            return;
+        }
+        try {
+            target.write('"');
+            int start = 0;
+            int length = value.length();
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                if (c >= 0x20 && c != '"' && c != '\\') {
+                    continue;
+                }
+                if (i > start) {
+                    target.write(value, start, i - start);
+                }
+                start = i + 1;
+                target.write('\\');
+                switch (c) {
+                    case '"':
+                    case '\\':
+                        target.write(c);
+                        break;
+                    case '\b':
+                        target.write('b');
+                        break;
+                    case '\t':
+                        target.write('t');
+                        break;
+                    case '\n':
+                        target.write('n');
+                        break;
+                    case '\f':
+                        target.write('f');
+                        break;
+                    case '\r':
+                        target.write('r');
+                        break;
+                    default:
+                        target.write("u00");
+                        target.write(HEX[c >> 4]);
+                        target.write(HEX[c & 0xF]);
+                }
+            }
+            if (start < length) {
+                target.write(value, start, length - start);
+            }
+            target.write('"');
+        } catch (IOException e) {
+            error = e;
+        }
+    }
+
+    private void write(String text) {
+        if (error != null) {
+            return;
+        }
+        try {
+            target.write(text);
+        } catch (IOException e) {
+            error = e;
+        }
+    }
+
+    private void write(char c) {
+        if (error != null) {
+            return;
+        }
+        try {
+            target.write(c);
+        } catch (IOException e) {
+            error = e;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package tv.tvai.like;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the classic {@link Extractor#extract(org.jsoup.nodes.Document, List)} output: one
+ * {@link LinkedHashMap} per section holding {@code section}, the section options, one
+ * {@link Result} per field and an {@code items} {@link Result} wrapping the item maps.
+ */
+public class MapExtractionSink implements ExtractionSink {
+
+    private final List<Map<String, Object>> result;
+    private Map<String, Object> section;
+    private Map<String, Object> item;
+    private List<Map<String, Object>> items;
+    private Map<String, Object> itemsOptions;
+    /**
+     * Result layout per option map; option maps are shared per compiled rule, so every result of
+     * a rule shares one key and option array.
+     */
+    private final Map<Map<String, Object>, Result.Layout> layouts = new IdentityHashMap<>();
+
+    public MapExtractionSink() {
+        this(new ArrayList<Map<String, Object>>());
+    }
+
+    /**
+     * @param result list the sections are appended to
+     */
+    public MapExtractionSink(List<Map<String, Object>> result) {
+        this.result = result;
+    }
+
+    public List<Map<String, Object>> getResult() {
+        return result;
+    }
+
+    @Override
+    public void beginSection(String name, Map<String, Object> options) {
+        section = new LinkedHashMap<>();
+        section.put("section", name);
+        section.putAll(options);
+    }
+
+    @Override
+    public void field(String name, String value, Map<String, Object> options) {
+        (item != null ? item : section).put(name, new Result(value, layout(options)));
+    }
+
+    @Override
+    public void beginItems(Map<String, Object> options) {
+        items = new ArrayList<>();
+        itemsOptions = options;
+    }
+
+    @Override
+    public void beginItem() {
+        item = new LinkedHashMap<>();
+    }
+
+    @Override
+    public void endItem() {
+        items.add(item);
+        item = null;
+    }
+
+    @Override
+    public void endItems() {
+        section.put("items", new Result(items, layout(itemsOptions)));
+        items = null;
+        itemsOptions = null;
+    }
+
+    @Override
+    public void endSection() {
+        result.add(section);
+        section = null;
+    }
+
+    private Result.Layout layout(Map<String, Object> options) {
+        Result.Layout layout = layouts.get(options);
+        if (layout == null) {
+            layout = Result.Layout.of(options);
+            layouts.put(options, layout);
+        }
+        return layout;
+    }
+}
@@ -0,0 +1,23 @@
+package tv.tvai.like;
+
+/**
+ * One {@code (html, url)} input of a {@link TV#likeAll(java.util.Collection)} batch.
+ */
+public final class Page {
+
+    private final String html;
+    private final String url;
+
+    public Page(String html, String url) {
+        this.html = html;
+        this.url = url;
+    }
+
+    public String getHtml() {
+        return html;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+}
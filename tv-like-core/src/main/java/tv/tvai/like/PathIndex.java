@@ -0,0 +1,138 @@
+package tv.tvai.like;
+
+import tv.tvai.like.util.AntPathMatcher;
+import tv.tvai.like.util.CompiledPathPattern;
+import tv.tvai.like.util.LruCache;
+import tv.tvai.like.util.PathMatcher;
+import tv.tvai.like.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Path-to-rules lookup of a {@link RuleSet}. Patterns hang off a trie of their literal leading
+ * segments, so a lookup only tests the patterns whose literal prefix the path shares. When
+ * several patterns match, the most specific one by {@link PathMatcher#getPatternComparator(String)}
+ * wins, earlier declarations breaking ties. Patterns are matched with a
+ * {@link CompiledPathPattern} built once per index. Results are memoized per path in a bounded LRU.
+ */
+final class PathIndex {
+
+    static final int DEFAULT_MEMO_SIZE = 1024;
+
+    private static final String SEPARATOR = "/";
+    private static final PathMatcher PATH_MATCHER = new AntPathMatcher();
+
+    private final Node root = new Node();
+    private final LruCache<String, List<RuleNode>> memo;
+
+    PathIndex(Map<String, List<RuleNode>> pathRules, int memoSize) {
+        int order = 0;
+        for (Map.Entry<String, List<RuleNode>> entry : pathRules.entrySet()) {
+            Node node = root;
+            for (String segment : tokenize(entry.getKey())) {
+                if (!isLiteral(segment)) {
+                    break;
+                }
+                Node child = node.children.get(segment);
+                if (child == null) {
+                    child = new Node();
+                    node.children.put(segment, child);
+                }
+                node = child;
+            }
+            node.patterns.add(new Entry(entry.getKey(), entry.getValue(), order++));
+        }
+        this.memo = new LruCache<>(Math.max(1, memoSize));
+    }
+
+    List<RuleNode> lookup(String path) {
+        List<RuleNode> rules = memo.get(path);
+        if (rules == null) {
+            rules = resolve(path);
+            memo.put(path, rules);
+        }
+        return rules;
+    }
+
+    private List<RuleNode> resolve(String path) {
+        Entry best = null;
+        Comparator<String> specificity = null;
+        Node node = root;
+        String[] segments = tokenize(path);
+        for (int depth = 0; node != null; depth++) {
+            for (Entry candidate : node.patterns) {
+                if (!candidate.matches(path)) {
+                    continue;
+                }
+                if (best == null) {
+                    best = candidate;
+                    continue;
+                }
+                if (specificity == null) {
+                    specificity = PATH_MATCHER.getPatternComparator(path);
+                }
+                int cmp = specificity.compare(candidate.pattern, best.pattern);
+                if (cmp < 0 || (cmp == 0 && candidate.order < best.order)) {
+                    best = candidate;
+                }
+            }
+            node = depth < segments.length ? node.children.get(segments[depth]) : null;
+        }
+        return best == null ? Collections.<RuleNode>emptyList() : best.rules;
+    }
+
+    private static String[] tokenize(String path) {
+        return StringUtils.tokenizeToStringArray(path, SEPARATOR, false, true);
+    }
+
+    private static boolean isLiteral(String segment) {
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            if (c == '*' || c == '?' || c == '{') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Node {
+        private final Map<String, Node> children = new HashMap<>();
+        private final List<Entry> patterns = new ArrayList<>(1);
+    }
+
+    private static final class Entry {
+        private final String pattern;
+        /**
+         * Null when a {@code {name:regex}} template does not compile; {@link AntPathMatcher} then
+         * reports the error on each lookup, as before.
+         */
+        private final CompiledPathPattern compiled;
+        private final List<RuleNode> rules;
+        private final int order;
+
+        private Entry(String pattern, List<RuleNode> rules, int order) {
+            this.pattern = pattern;
+            this.compiled = compile(pattern);
+            this.rules = rules;
+            this.order = order;
+        }
+
+        private boolean matches(String path) {
+            return compiled != null ? compiled.matches(path) : PATH_MATCHER.match(pattern, path);
+        }
+
+        private static CompiledPathPattern compile(String pattern) {
+            try {
+                return CompiledPathPattern.compile(pattern);
+            } catch (PatternSyntaxException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -1,25 +1,415 @@
 package tv.tvai.like;
 
-import lombok.Data;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
-import java.util.HashMap;
-
-@Data
-public class Result extends HashMap<String, Object> {
+/**
+ * One extracted value plus its exported options, e.g. {@code {"value": "...", "badge": "hot"}}.
+ * <p>
+ * Stored as two small parallel arrays instead of a hash table. Results built by the extractor
+ * share their key and option arrays with every other result of the same rule (see
+ * {@link Layout}) and only copy them when modified. Iteration order is the order a
+ * {@link java.util.HashMap} with the same insertion history would use, so serialized output is
+ * unchanged from when this class extended {@code HashMap}.
+ * <p>
+ * The {@code value} entry is read-only: putting it again throws {@link UnsupportedOperationException}.
+ */
+public class Result extends AbstractMap<String, Object> {
 
     private static final String VALUE_KEY = "value";
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final Layout VALUE_ONLY = new Layout(new String[]{VALUE_KEY}, new Object[1], 0, DEFAULT_CAPACITY);
+
+    private String[] keys;
+    private Object[] values;
+    private int size;
+    /**
+     * Table size of the equivalent {@code HashMap}; grows like it and never shrinks.
+     */
+    private int capacity;
+    /**
+     * Position of {@code value} in {@link #keys}, or -1. Its value lives in {@link #value} so
+     * that {@link #values} can stay shared.
+     */
+    private int valueIndex;
+    private Object value;
+    private boolean shared;
+    private int modCount;
+    private transient Set<Map.Entry<String, Object>> entrySet;
 
     public Result(Object value) {
-        super.put(VALUE_KEY, value);
+        this(value, VALUE_ONLY);
+    }
+
+    /**
+     * A result holding {@code value} and the options of {@code layout}; the layout's arrays are
+     * shared until this result is modified.
+     */
+    Result(Object value, Layout layout) {
+        this.keys = layout.keys;
+        this.values = layout.values;
+        this.size = layout.keys.length;
+        this.capacity = layout.capacity;
+        this.valueIndex = layout.valueIndex;
+        this.value = value;
+        this.shared = true;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
     }
 
     @Override
-    public Object put(String key, Object value) {
-        if (VALUE_KEY.equals(key) && super.containsKey(VALUE_KEY)) {
-            throw new UnsupportedOperationException(
-                    "'value' key is read-only and cannot be overwritten"
-            );
+    public Object get(Object key) {
+        int i = indexOf(key);
+        return i < 0 ? null : valueAt(i);
+    }
+
+    @Override
+    public Object put(String key, Object newValue) {
+        int i = indexOf(key);
+        if (i >= 0) {
+            if (i == valueIndex) {
+                throw new UnsupportedOperationException(
+                        "'value' key is read-only and cannot be overwritten"
+                );
+            }
+            unshare();
+            Object old = values[i];
+            values[i] = newValue;
+            return old;
+        }
+        insert(key, newValue);
+        return null;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        int i = indexOf(key);
+        if (i < 0) {
+            return null;
+        }
+        Object old = valueAt(i);
+        removeAt(i);
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        keys = new String[0];
+        values = new Object[0];
+        size = 0;
+        valueIndex = -1;
+        value = null;
+        shared = false;
+        modCount++;
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        Set<Map.Entry<String, Object>> es = entrySet;
+        if (es == null) {
+            entrySet = es = new EntrySet();
+        }
+        return es;
+    }
+
+    private int indexOf(Object key) {
+        for (int i = 0; i < size; i++) {
+            String k = keys[i];
+            if (k == key || (k != null && k.equals(key))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private Object valueAt(int i) {
+        return i == valueIndex ? value : values[i];
+    }
+
+    private void setValueAt(int i, Object newValue) {
+        if (i == valueIndex) {
+            value = newValue;
+        } else {
+            unshare();
+            values[i] = newValue;
+        }
+    }
+
+    private void insert(String key, Object newValue) {
+        int length = size + 1;
+        String[] newKeys = new String[length];
+        Object[] newValues = new Object[length];
+        // A new key goes to the end of its bucket's chain.
+        int bucket = bucket(key, capacity);
+        int at = size;
+        while (at > 0 && bucket(keys[at - 1], capacity) > bucket) {
+            at--;
+        }
+        System.arraycopy(keys, 0, newKeys, 0, at);
+        System.arraycopy(values, 0, newValues, 0, at);
+        newKeys[at] = key;
+        newValues[at] = newValue;
+        System.arraycopy(keys, at, newKeys, at + 1, size - at);
+        System.arraycopy(values, at, newValues, at + 1, size - at);
+        if (valueIndex >= at) {
+            valueIndex++;
+        }
+        if (VALUE_KEY.equals(key)) {
+            valueIndex = at;
+            value = newValue;
+            newValues[at] = null;
+        }
+        keys = newKeys;
+        values = newValues;
+        size = length;
+        shared = false;
+        modCount++;
+        if (size > capacity * 3 / 4) {
+            capacity <<= 1;
+            sortByBucket(keys, values, size, capacity);
+            valueIndex = indexOf(VALUE_KEY);
+        }
+    }
+
+    private void removeAt(int i) {
+        int length = size - 1;
+        String[] newKeys = new String[length];
+        Object[] newValues = new Object[length];
+        System.arraycopy(keys, 0, newKeys, 0, i);
+        System.arraycopy(values, 0, newValues, 0, i);
+        System.arraycopy(keys, i + 1, newKeys, i, length - i);
+        System.arraycopy(values, i + 1, newValues, i, length - i);
+        if (i == valueIndex) {
+            valueIndex = -1;
+            value = null;
+        } else if (valueIndex > i) {
+            valueIndex--;
+        }
+        keys = newKeys;
+        values = newValues;
+        size = length;
+        shared = false;
+        modCount++;
+    }
+
+    private void unshare() {
+        if (shared) {
+            values = values.clone();
+            shared = false;
+        }
+    }
+
+    private static int bucket(String key, int capacity) {
+        if (key == null) {
+            return 0;
+        }
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (capacity - 1);
+    }
+
+    /**
+     * Stable insertion sort by bucket; keeps insertion order within a bucket, as a resize does.
+     */
+    private static void sortByBucket(String[] keys, Object[] values, int size, int capacity) {
+        for (int i = 1; i < size; i++) {
+            String key = keys[i];
+            Object value = values[i];
+            int bucket = bucket(key, capacity);
+            int j = i - 1;
+            while (j >= 0 && bucket(keys[j], capacity) > bucket) {
+                keys[j + 1] = keys[j];
+                values[j + 1] = values[j];
+                j--;
+            }
+            keys[j + 1] = key;
+            values[j + 1] = value;
+        }
+    }
+
+    /**
+     * Shared, immutable key order and option values for every result built from one option map:
+     * the state of a {@code Result} created with {@code value} and then given each option in turn.
+     */
+    static final class Layout {
+        final String[] keys;
+        final Object[] values;
+        final int valueIndex;
+        final int capacity;
+
+        private Layout(String[] keys, Object[] values, int valueIndex, int capacity) {
+            this.keys = keys;
+            this.values = values;
+            this.valueIndex = valueIndex;
+            this.capacity = capacity;
+        }
+
+        /**
+         * An option named {@code value} is ignored; it could never be added to a result.
+         */
+        static Layout of(Map<String, Object> options) {
+            if (options.isEmpty() || (options.size() == 1 && options.containsKey(VALUE_KEY))) {
+                return VALUE_ONLY;
+            }
+            int size = 1;
+            String[] keys = new String[options.size() + 1];
+            Object[] values = new Object[keys.length];
+            keys[0] = VALUE_KEY;
+            for (Map.Entry<String, Object> option : options.entrySet()) {
+                if (!VALUE_KEY.equals(option.getKey())) {
+                    keys[size] = option.getKey();
+                    values[size] = option.getValue();
+                    size++;
+                }
+            }
+            if (size < keys.length) {
+                String[] trimmedKeys = new String[size];
+                Object[] trimmedValues = new Object[size];
+                System.arraycopy(keys, 0, trimmedKeys, 0, size);
+                System.arraycopy(values, 0, trimmedValues, 0, size);
+                keys = trimmedKeys;
+                values = trimmedValues;
+            }
+            int capacity = DEFAULT_CAPACITY;
+            while (size > capacity * 3 / 4) {
+                capacity <<= 1;
+            }
+            sortByBucket(keys, values, size, capacity);
+            int valueIndex = 0;
+            while (!VALUE_KEY.equals(keys[valueIndex])) {
+                valueIndex++;
+            }
+            return new Layout(keys, values, valueIndex, capacity);
+        }
+    }
+
+    private final class EntrySet extends AbstractSet<Map.Entry<String, Object>> {
+        @Override
+        public Iterator<Map.Entry<String, Object>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public void clear() {
+            Result.this.clear();
+        }
+    }
+
+    private final class EntryIterator implements Iterator<Map.Entry<String, Object>> {
+        private int next;
+        private int last = -1;
+        private int expectedModCount = modCount;
+
+        @Override
+        public boolean hasNext() {
+            return next < size;
+        }
+
+        @Override
+        public Map.Entry<String, Object> next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (next >= size) {
+                throw new NoSuchElementException();
+            }
+            last = next++;
+            return new Entry(keys[last], last);
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            removeAt(last);
+            next = last;
+            last = -1;
+            expectedModCount = modCount;
+        }
+    }
+
+    /**
+     * Entry view that reads and writes through to the result.
+     */
+    private final class Entry implements Map.Entry<String, Object> {
+        private final String key;
+        private final int index;
+
+        private Entry(String key, int index) {
+            this.key = key;
+            this.index = index;
+        }
+
+        /**
+         * Where the key is now; the result may have been modified since this entry was handed out.
+         */
+        private int position() {
+            return index < size && keys[index] == key ? index : indexOf(key);
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public Object getValue() {
+            int i = position();
+            return i < 0 ? null : valueAt(i);
+        }
+
+        @Override
+        public Object setValue(Object newValue) {
+            int i = position();
+            if (i < 0) {
+                throw new IllegalStateException("entry was removed");
+            }
+            Object old = valueAt(i);
+            setValueAt(i, newValue);
+            return old;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            Object v = getValue();
+            return (key == null ? e.getKey() == null : key.equals(e.getKey()))
+                    && (v == null ? e.getValue() == null : v.equals(e.getValue()));
+        }
+
+        @Override
+        public int hashCode() {
+            Object v = getValue();
+            return (key == null ? 0 : key.hashCode()) ^ (v == null ? 0 : v.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + getValue();
         }
-        return super.put(key, value);
     }
 }
@@ -0,0 +1,243 @@
+package tv.tvai.like;
+
+import org.jsoup.nodes.Element;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Buckets rules by the rightmost compound of their selector, the way browser style engines do:
+ * a rule ending in {@code #id} is only tried on elements with that id, one ending in
+ * {@code .cls} on elements carrying that class, then by tag, and everything else on every element.
+ * Candidates come back in rule order, so dispatch through the index yields the same results as
+ * testing every rule.
+ * <p>
+ * The index also records, per rule, the hashes of the ancestors its selector requires, for
+ * checking against an {@link AncestorFilter} before the real match.
+ */
+final class RuleIndex {
+
+    private final RuleNode[] rules;
+    private final int[] universal;
+    private final Map<String, int[]> byId;
+    private final Map<String, int[]> byClass;
+    private final Map<String, int[]> byTag;
+    /**
+     * Per rule, per selector group, the ancestor hashes that group needs; {@code null} when the
+     * rule has a group without ancestor requirements.
+     */
+    private final int[][][] ancestorHashes;
+    private final boolean usesAncestorFilter;
+
+    private RuleIndex(RuleNode[] rules, int[] universal,
+                      Map<String, int[]> byId, Map<String, int[]> byClass, Map<String, int[]> byTag) {
+        this.rules = rules;
+        this.universal = universal;
+        this.byId = byId;
+        this.byClass = byClass;
+        this.byTag = byTag;
+        this.ancestorHashes = new int[rules.length][][];
+        boolean any = false;
+        for (int i = 0; i < rules.length; i++) {
+            ancestorHashes[i] = ancestorHashes(rules[i].getShape());
+            any |= ancestorHashes[i] != null;
+        }
+        this.usesAncestorFilter = any;
+    }
+
+    static RuleIndex build(List<RuleNode> rules) {
+        RuleNode[] array = rules.toArray(new RuleNode[0]);
+        List<Integer> universal = new ArrayList<>();
+        Map<String, List<Integer>> byId = new HashMap<>();
+        Map<String, List<Integer>> byClass = new HashMap<>();
+        Map<String, List<Integer>> byTag = new HashMap<>();
+        for (int i = 0; i < array.length; i++) {
+            SelectorShape shape = array[i].getShape();
+            if (shape.isUnknown() || hasUniversalGroup(shape)) {
+                universal.add(i);
+                continue;
+            }
+            for (List<SelectorShape.Compound> group : shape.groups()) {
+                SelectorShape.Compound subject = group.get(group.size() - 1);
+                if (subject.id != null) {
+                    add(byId, subject.id, i);
+                } else if (!subject.classes.isEmpty()) {
+                    add(byClass, subject.classes.get(0), i);
+                } else {
+                    add(byTag, subject.tag, i);
+                }
+            }
+        }
+        return new RuleIndex(array, toArray(universal), freeze(byId), freeze(byClass), freeze(byTag));
+    }
+
+    private static boolean hasUniversalGroup(SelectorShape shape) {
+        for (List<SelectorShape.Compound> group : shape.groups()) {
+            if (group.get(group.size() - 1).isUniversal()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    int size() {
+        return rules.length;
+    }
+
+    boolean usesAncestorFilter() {
+        return usesAncestorFilter;
+    }
+
+    /**
+     * {@code false} when the ancestors on {@code filter}'s stack rule out every group of the
+     * rule's selector.
+     */
+    boolean mayMatchUnder(int index, AncestorFilter filter) {
+        int[][] groups = ancestorHashes[index];
+        if (groups == null) {
+            return true;
+        }
+        for (int[] hashes : groups) {
+            if (filter.mightContainAll(hashes)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A compound whose combinator to the right is a descendant or child combinator always matches
+     * an ancestor of the subject, even across sibling combinators further right.
+     */
+    private static int[][] ancestorHashes(SelectorShape shape) {
+        if (shape.isUnknown()) {
+            return null;
+        }
+        List<List<SelectorShape.Compound>> groups = shape.groups();
+        int[][] result = new int[groups.size()][];
+        for (int g = 0; g < groups.size(); g++) {
+            List<SelectorShape.Compound> group = groups.get(g);
+            List<Integer> hashes = new ArrayList<>();
+            for (int i = group.size() - 2; i >= 0; i--) {
+                char combinator = group.get(i + 1).combinator;
+                if (combinator != ' ' && combinator != '>') {
+                    continue;
+                }
+                SelectorShape.Compound ancestor = group.get(i);
+                if (ancestor.tag != null) {
+                    hashes.add(AncestorFilter.tagHash(ancestor.tag));
+                }
+                if (ancestor.id != null) {
+                    hashes.add(AncestorFilter.idHash(ancestor.id));
+                }
+                for (String cls : ancestor.classes) {
+                    hashes.add(AncestorFilter.classHash(cls));
+                }
+            }
+            if (hashes.isEmpty()) {
+                return null;
+            }
+            result[g] = toArray(hashes);
+        }
+        return result;
+    }
+
+    RuleNode rule(int index) {
+        return rules[index];
+    }
+
+    /**
+     * Collects, in ascending order and without duplicates, the indexes of the rules that may
+     * match {@code el}.
+     */
+    void candidates(Element el, Candidates out) {
+        out.size = 0;
+        out.addAll(universal);
+        if (!byTag.isEmpty()) {
+            out.addAll(byTag.get(el.normalName()));
+        }
+        if (!byId.isEmpty()) {
+            String id = el.id();
+            if (!id.isEmpty()) {
+                out.addAll(byId.get(id));
+            }
+        }
+        if (!byClass.isEmpty()) {
+            String className = el.className();
+            int len = className.length();
+            int i = 0;
+            while (i < len) {
+                while (i < len && Character.isWhitespace(className.charAt(i))) i++;
+                int start = i;
+                while (i < len && !Character.isWhitespace(className.charAt(i))) i++;
+                if (i > start) {
+                    out.addAll(byClass.get(SelectorShape.foldCase(className.substring(start, i))));
+                }
+            }
+        }
+        out.sortUnique();
+    }
+
+    /**
+     * Reusable scratch buffer for {@link #candidates(Element, Candidates)}.
+     */
+    static final class Candidates {
+        int[] indexes = new int[16];
+        int size;
+
+        void addAll(int[] values) {
+            if (values == null || values.length == 0) {
+                return;
+            }
+            if (size + values.length > indexes.length) {
+                indexes = Arrays.copyOf(indexes, Math.max(indexes.length * 2, size + values.length));
+            }
+            System.arraycopy(values, 0, indexes, size, values.length);
+            size += values.length;
+        }
+
+        void sortUnique() {
+            if (size < 2) {
+                return;
+            }
+            Arrays.sort(indexes, 0, size);
+            int w = 1;
+            for (int r = 1; r < size; r++) {
+                if (indexes[r] != indexes[w - 1]) {
+                    indexes[w++] = indexes[r];
+                }
+            }
+            size = w;
+        }
+    }
+
+    private static void add(Map<String, List<Integer>> map, String key, int index) {
+        List<Integer> list = map.get(key);
+        if (list == null) {
+            list = new ArrayList<>();
+            map.put(key, list);
+        }
+        if (list.isEmpty() || list.get(list.size() - 1) != index) {
+            list.add(index);
+        }
+    }
+
+    private static Map<String, int[]> freeze(Map<String, List<Integer>> map) {
+        Map<String, int[]> frozen = new HashMap<>(map.size() * 2);
+        for (Map.Entry<String, List<Integer>> entry : map.entrySet()) {
+            frozen.put(entry.getKey(), toArray(entry.getValue()));
+        }
+        return frozen;
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+}
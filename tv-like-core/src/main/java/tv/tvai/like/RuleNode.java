@@ -1,6 +1,18 @@
 package tv.tvai.like;
 
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.QueryParser;
+import org.jsoup.select.Selector;
+import tv.tvai.like.enums.OptionKeyEnum;
+import tv.tvai.like.transform.Transform;
+import tv.tvai.like.transform.Transforms;
+import tv.tvai.like.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 public class RuleNode {
@@ -10,6 +22,13 @@ public class RuleNode {
     private Map<String, Options> fieldOptions = new HashMap<String, Options>();
     private RuleNode itemTemplate;
     private Options sectionOptions;
+    private Evaluator evaluator;
+    private SelectorShape shape = SelectorShape.UNKNOWN;
+    private Field[] fields = new Field[0];
+    private long limit = -1;
+    private Map<String, Object> exportedOptions = Collections.emptyMap();
+    private Map<String, Evaluator> fieldEvaluators = Collections.emptyMap();
+    private boolean frozen;
 
     public RuleNode() {}
 
@@ -30,9 +49,142 @@ public class RuleNode {
         public Map<String, Object> getValues() {
             return values;
         }
+
+        void freeze() {
+            values = Collections.unmodifiableMap(values);
+        }
+    }
+
+    /**
+     * Compiles every selector of this node into a jsoup {@link Evaluator} and makes the node
+     * read-only so that a compiled {@link RuleSet} can be shared between threads. Field and item
+     * selectors that do not parse, and fields whose transform chain is malformed, are dropped here
+     * rather than failing on every element later.
+     *
+     * @return {@code false} when the node's own selector is blank or invalid, i.e. it can never match
+     */
+    synchronized boolean compile() {
+        if (frozen) {
+            return evaluator != null;
+        }
+        evaluator = compileSelector(selector);
+        if (evaluator != null) {
+            shape = SelectorShape.of(selector);
+        }
+        Map<String, Evaluator> evaluators = new LinkedHashMap<String, Evaluator>();
+        List<Field> compiledFields = new ArrayList<Field>();
+        for (Map.Entry<String, String> entry : fieldSelectors.entrySet()) {
+            Evaluator fieldEvaluator = compileSelector(entry.getValue());
+            if (fieldEvaluator != null) {
+                evaluators.put(entry.getKey(), fieldEvaluator);
+                compiledFields.add(new Field(entry.getKey(), fieldEvaluator, fieldOptions.get(entry.getKey())));
+            }
+        }
+        fieldEvaluators = Collections.unmodifiableMap(evaluators);
+        fields = compiledFields.toArray(new Field[0]);
+        limit = parseLimit(sectionOptions);
+        exportedOptions = exportedOptions(sectionOptions);
+        if (itemTemplate != null && !itemTemplate.compile()) {
+            itemTemplate = null;
+        }
+        for (Options options : fieldOptions.values()) {
+            if (options != null) {
+                options.freeze();
+            }
+        }
+        if (sectionOptions != null) {
+            sectionOptions.freeze();
+        }
+        fieldSelectors = Collections.unmodifiableMap(fieldSelectors);
+        fieldOptions = Collections.unmodifiableMap(fieldOptions);
+        frozen = true;
+        return evaluator != null;
+    }
+
+    /**
+     * Typed, pre-resolved form of one field line, so the per-element extraction path does no
+     * option lookups, parsing or string splitting.
+     */
+    static final class Field {
+        final String name;
+        final Evaluator evaluator;
+        /**
+         * Attribute the value is read from, or {@code null} to read the element text.
+         */
+        final String attr;
+        final Transform[] transforms;
+        final Map<String, Object> exportedOptions;
+
+        private Field(String name, Evaluator evaluator, Options options) {
+            this.name = name;
+            this.evaluator = evaluator;
+            Object explicitAttr = option(options, OptionKeyEnum.ATTR);
+            if (explicitAttr != null) {
+                this.attr = explicitAttr.toString();
+            } else if ("img".equals(name)) {
+                this.attr = "src";
+            } else if ("link".equals(name)) {
+                this.attr = "href";
+            } else {
+                this.attr = null;
+            }
+            Object transform = option(options, OptionKeyEnum.TRANSFORM);
+            this.transforms = Transforms.compileLenient(transform == null ? null : transform.toString());
+            this.exportedOptions = RuleNode.exportedOptions(options);
+        }
+    }
+
+    private static Object option(Options options, OptionKeyEnum key) {
+        return options == null ? null : options.getValues().get(key.getKey());
+    }
+
+    private static long parseLimit(Options options) {
+        Object value = option(options, OptionKeyEnum.LIMIT);
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.toString().trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Non-executable options as an unmodifiable map, in the options' iteration order.
+     */
+    private static Map<String, Object> exportedOptions(Options options) {
+        if (options == null || options.getValues().isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, Object> exported = new LinkedHashMap<String, Object>();
+        for (Map.Entry<String, Object> entry : options.getValues().entrySet()) {
+            if (!OptionKeyEnum.executable(entry.getKey())) {
+                exported.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return exported.isEmpty() ? Collections.<String, Object>emptyMap() : Collections.unmodifiableMap(exported);
+    }
+
+    private static Evaluator compileSelector(String selector) {
+        if (StringUtils.isBlank(selector)) {
+            return null;
+        }
+        try {
+            return QueryParser.parse(selector);
+        } catch (Selector.SelectorParseException e) {
+            return null;
+        }
+    }
+
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new UnsupportedOperationException("RuleNode is frozen and cannot be modified");
+        }
     }
 
     public void setName(String name) {
+        checkNotFrozen();
         if (this.name == null) this.name = name;
     }
 
@@ -41,6 +193,7 @@ public class RuleNode {
     }
 
     public void setSelector(String selector) {
+        checkNotFrozen();
         if (selector != null && this.selector == null) {
             this.selector = selector;
         }
@@ -50,6 +203,42 @@ public class RuleNode {
         return selector;
     }
 
+    /**
+     * Compiled form of {@link #getSelector()}; {@code null} until {@link #compile()} has run.
+     */
+    public Evaluator getEvaluator() {
+        return evaluator;
+    }
+
+    SelectorShape getShape() {
+        return shape;
+    }
+
+    /**
+     * The {@code limit} option as a number, or {@code -1} when absent or not numeric.
+     */
+    public long getLimit() {
+        return limit;
+    }
+
+    Field[] getFields() {
+        return fields;
+    }
+
+    /**
+     * Non-executable options of this node, i.e. the ones copied into the output.
+     */
+    Map<String, Object> getExportedOptions() {
+        return exportedOptions;
+    }
+
+    /**
+     * Compiled field selectors, in the iteration order of {@link #getFieldSelectors()}.
+     */
+    public Map<String, Evaluator> getFieldEvaluators() {
+        return fieldEvaluators;
+    }
+
     public Map<String, String> getFieldSelectors() {
         return fieldSelectors;
     }
@@ -59,6 +248,7 @@ public class RuleNode {
     }
 
     public void setItemTemplate(RuleNode t) {
+        checkNotFrozen();
         if (this.itemTemplate == null) {
             this.itemTemplate = t;
         }
@@ -69,6 +259,7 @@ public class RuleNode {
     }
 
     public void setSectionOptions(Options options) {
+        checkNotFrozen();
         if (this.sectionOptions == null) {
             this.sectionOptions = options;
         }
@@ -0,0 +1,71 @@
+package tv.tvai.like;
+
+import tv.tvai.like.util.StringUtils;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiled, immutable form of a DSL. Instances are produced by {@link RuleParser#compile(String)}
+ * or {@link RuleSetCodec#read(java.io.InputStream)} and may be shared freely between threads and
+ * pages. Each path's selectors are compiled the first time its rules are read.
+ */
+public final class RuleSet {
+
+    private final String contentHash;
+    private final Map<String, List<RuleNode>> pathRules;
+    private final PathIndex pathIndex;
+
+    RuleSet(String contentHash, Map<String, List<RuleNode>> pathRules) {
+        this.contentHash = contentHash;
+        Map<String, List<RuleNode>> copy = new LinkedHashMap<>();
+        // Patterns declared together ("/a/** || /b/**") share one rule list and its index.
+        Map<List<RuleNode>, CompiledRuleList> shared = new IdentityHashMap<>();
+        for (Map.Entry<String, List<RuleNode>> entry : pathRules.entrySet()) {
+            CompiledRuleList rules = shared.get(entry.getValue());
+            if (rules == null) {
+                rules = new CompiledRuleList(entry.getValue());
+                shared.put(entry.getValue(), rules);
+            }
+            copy.put(entry.getKey(), rules);
+        }
+        this.pathRules = Collections.unmodifiableMap(copy);
+        this.pathIndex = new PathIndex(this.pathRules, PathIndex.DEFAULT_MEMO_SIZE);
+    }
+
+    /**
+     * SHA-256 of the DSL text this rule set was compiled from.
+     */
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public Map<String, List<RuleNode>> getPathRules() {
+        return pathRules;
+    }
+
+    public boolean isEmpty() {
+        return pathRules.isEmpty();
+    }
+
+    /**
+     * Compiles the selectors of every path now rather than on first use, e.g. before a rule set
+     * replaces another one that pages are already being served from.
+     */
+    void precompile() {
+        for (List<RuleNode> rules : pathRules.values()) {
+            ((CompiledRuleList) rules).index();
+        }
+    }
+
+    /**
+     * Rules of the most specific path pattern matching {@code path}; among equally specific
+     * patterns the one declared first wins. Empty when no pattern matches.
+     */
+    public List<RuleNode> getPathRule(String path) {
+        return pathIndex.lookup(StringUtils.isBlank(path) ? "/" : path);
+    }
+}
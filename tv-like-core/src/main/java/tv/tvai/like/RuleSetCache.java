@@ -0,0 +1,78 @@
+package tv.tvai.like;
+
+import tv.tvai.like.util.DigestUtils;
+import tv.tvai.like.util.LruCache;
+import tv.tvai.like.util.StringUtils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of compiled {@link RuleSet}s keyed by the SHA-256 of the DSL text, so that
+ * pages served by the same DSL skip parsing entirely.
+ */
+public class RuleSetCache {
+
+    public static final int DEFAULT_MAX_SIZE = 512;
+
+    private static final RuleSetCache SHARED = new RuleSetCache(DEFAULT_MAX_SIZE);
+
+    private final LruCache<String, RuleSet> cache;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    public RuleSetCache(int maxSize) {
+        this.cache = new LruCache<>(maxSize);
+    }
+
+    public static RuleSetCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Returns the compiled form of {@code dsl}, compiling and caching it on a miss.
+     */
+    public RuleSet get(String dsl) {
+        if (StringUtils.isBlank(dsl)) {
+            return null;
+        }
+        String hash = DigestUtils.sha256Hex(dsl);
+        RuleSet ruleSet = cache.get(hash);
+        if (ruleSet != null) {
+            hitCount.incrementAndGet();
+            return ruleSet;
+        }
+        missCount.incrementAndGet();
+        return cache.putIfAbsent(hash, new RuleParser().compile(dsl, hash));
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return cache.evictionCount();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public int maxSize() {
+        return cache.maxSize();
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "RuleSetCache{size=" + size() + ", maxSize=" + maxSize()
+                + ", hits=" + getHitCount() + ", misses=" + getMissCount()
+                + ", evictions=" + getEvictionCount() + "}";
+    }
+}
@@ -0,0 +1,396 @@
+package tv.tvai.like;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary form of a {@link RuleSet}, for persisting compiled rules (e.g. in the app cache
+ * directory or as an asset) and loading them without parsing DSL text again.
+ * <p>
+ * Layout, all counts and references as unsigned LEB128 varints:
+ * <pre>
+ * magic "TVRS", version            int, int
+ * content hash                     string
+ * string table                     count, (byte length, UTF-8 bytes)*
+ * rule lists                       count, (node count, node*)*
+ * paths                            count, (pattern ref, rule list index)*
+ * node                             name ref, selector ref, field selectors, field options,
+ *                                  section options, item template (0, or 1 and a node)
+ * options                          0 for none, or count + 1 and (key ref, typed value)*
+ * </pre>
+ * String references are table index + 1, with 0 for {@code null}; every distinct string is
+ * stored once. Option values keep their type: strings, booleans, ints, longs and doubles.
+ * <p>
+ * Selectors are stored as text and compiled lazily, like any other {@code RuleSet}. Data
+ * written by a different format version is rejected, so callers can fall back to the DSL.
+ */
+public final class RuleSetCodec {
+
+    private static final int MAGIC = 0x54565253;
+    private static final int VERSION = 1;
+
+    private static final int STRING = 0;
+    private static final int TRUE = 1;
+    private static final int FALSE = 2;
+    private static final int INT = 3;
+    private static final int LONG = 4;
+    private static final int DOUBLE = 5;
+
+    private RuleSetCodec() {
+    }
+
+    public static byte[] encode(RuleSet ruleSet) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+        write(ruleSet, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * @throws IOException if writing fails or an option holds a value of an unsupported type
+     */
+    public static void write(RuleSet ruleSet, OutputStream out) throws IOException {
+        Encoder encoder = new Encoder();
+        Map<List<RuleNode>, Integer> lists = new IdentityHashMap<>();
+        List<List<RuleNode>> order = new ArrayList<>();
+        for (List<RuleNode> rules : ruleSet.getPathRules().values()) {
+            if (!lists.containsKey(rules)) {
+                lists.put(rules, order.size());
+                order.add(rules);
+            }
+        }
+        Buffer body = new Buffer();
+        body.writeVarInt(order.size());
+        for (List<RuleNode> rules : order) {
+            List<RuleNode> source = rules instanceof CompiledRuleList ? ((CompiledRuleList) rules).source() : rules;
+            body.writeVarInt(source.size());
+            for (RuleNode node : source) {
+                encoder.node(body, node);
+            }
+        }
+        body.writeVarInt(ruleSet.getPathRules().size());
+        for (Map.Entry<String, List<RuleNode>> entry : ruleSet.getPathRules().entrySet()) {
+            body.writeVarInt(encoder.ref(entry.getKey()));
+            body.writeVarInt(lists.get(entry.getValue()));
+        }
+
+        Buffer head = new Buffer();
+        head.writeInt(MAGIC);
+        head.writeInt(VERSION);
+        head.writeString(ruleSet.getContentHash());
+        head.writeVarInt(encoder.strings.size());
+        for (String value : encoder.strings) {
+            head.writeString(value);
+        }
+        head.writeTo(out);
+        body.writeTo(out);
+        out.flush();
+    }
+
+    public static RuleSet decode(byte[] data) throws IOException {
+        return new Decoder(data).ruleSet();
+    }
+
+    /**
+     * Reads a rule set written by {@link #write(RuleSet, OutputStream)}; the stream is read to
+     * its end but not closed.
+     *
+     * @throws IOException if the data is truncated, corrupt or of another format version
+     */
+    public static RuleSet read(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(4096, in.available()));
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            bytes.write(buffer, 0, n);
+        }
+        return decode(bytes.toByteArray());
+    }
+
+    private static final class Encoder {
+        private final Map<String, Integer> refs = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+
+        int ref(String value) {
+            if (value == null) {
+                return 0;
+            }
+            Integer ref = refs.get(value);
+            if (ref == null) {
+                strings.add(value);
+                ref = strings.size();
+                refs.put(value, ref);
+            }
+            return ref;
+        }
+
+        void node(Buffer out, RuleNode node) throws IOException {
+            out.writeVarInt(ref(node.getName()));
+            out.writeVarInt(ref(node.getSelector()));
+            out.writeVarInt(node.getFieldSelectors().size());
+            for (Map.Entry<String, String> field : node.getFieldSelectors().entrySet()) {
+                out.writeVarInt(ref(field.getKey()));
+                out.writeVarInt(ref(field.getValue()));
+            }
+            out.writeVarInt(node.getFieldOptions().size());
+            for (Map.Entry<String, RuleNode.Options> field : node.getFieldOptions().entrySet()) {
+                out.writeVarInt(ref(field.getKey()));
+                options(out, field.getValue());
+            }
+            options(out, node.getSectionOptions());
+            if (node.getItemTemplate() == null) {
+                out.writeVarInt(0);
+            } else {
+                out.writeVarInt(1);
+                node(out, node.getItemTemplate());
+            }
+        }
+
+        private void options(Buffer out, RuleNode.Options options) throws IOException {
+            if (options == null) {
+                out.writeVarInt(0);
+                return;
+            }
+            out.writeVarInt(options.getValues().size() + 1);
+            for (Map.Entry<String, Object> option : options.getValues().entrySet()) {
+                out.writeVarInt(ref(option.getKey()));
+                Object value = option.getValue();
+                if (value instanceof String) {
+                    out.writeVarInt(STRING);
+                    out.writeVarInt(ref((String) value));
+                } else if (value instanceof Boolean) {
+                    out.writeVarInt((Boolean) value ? TRUE : FALSE);
+                } else if (value instanceof Integer) {
+                    out.writeVarInt(INT);
+                    out.writeInt((Integer) value);
+                } else if (value instanceof Long) {
+                    out.writeVarInt(LONG);
+                    out.writeLong((Long) value);
+                } else if (value instanceof Double) {
+                    out.writeVarInt(DOUBLE);
+                    out.writeLong(Double.doubleToLongBits((Double) value));
+                } else {
+                    throw new IOException("unsupported value for option '" + option.getKey() + "': "
+                            + value.getClass().getName());
+                }
+            }
+        }
+    }
+
+    private static final class Decoder {
+        private final byte[] data;
+        private int pos;
+        private String[] strings;
+
+        Decoder(byte[] data) {
+            this.data = data;
+        }
+
+        RuleSet ruleSet() throws IOException {
+            if (readInt() != MAGIC) {
+                throw new IOException("not a compiled rule set");
+            }
+            int version = readInt();
+            if (version != VERSION) {
+                throw new IOException("unsupported rule set version " + version);
+            }
+            String contentHash = readString();
+            strings = new String[count()];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = readString();
+            }
+            List<List<RuleNode>> lists = new ArrayList<>();
+            for (int i = count(); i > 0; i--) {
+                int size = count();
+                List<RuleNode> nodes = new ArrayList<>(size);
+                for (int j = 0; j < size; j++) {
+                    nodes.add(node());
+                }
+                lists.add(nodes);
+            }
+            Map<String, List<RuleNode>> pathRules = new LinkedHashMap<>();
+            for (int i = count(); i > 0; i--) {
+                String pattern = string();
+                int list = readVarInt();
+                if (pattern == null || list >= lists.size()) {
+                    throw new IOException("corrupt rule set");
+                }
+                pathRules.put(pattern, lists.get(list));
+            }
+            return new RuleSet(contentHash, pathRules);
+        }
+
+        private RuleNode node() throws IOException {
+            RuleNode node = new RuleNode(string(), string());
+            for (int i = count(); i > 0; i--) {
+                String name = string();
+                node.getFieldSelectors().put(name, string());
+            }
+            for (int i = count(); i > 0; i--) {
+                String name = string();
+                node.getFieldOptions().put(name, options());
+            }
+            RuleNode.Options sectionOptions = options();
+            if (sectionOptions != null) {
+                node.setSectionOptions(sectionOptions);
+            }
+            if (readVarInt() != 0) {
+                node.setItemTemplate(node());
+            }
+            return node;
+        }
+
+        private RuleNode.Options options() throws IOException {
+            int size = readVarInt() - 1;
+            if (size < 0) {
+                return null;
+            }
+            RuleNode.Options options = new RuleNode.Options();
+            for (int i = 0; i < size; i++) {
+                String key = string();
+                int type = readVarInt();
+                switch (type) {
+                    case STRING:
+                        options.putIfAbsent(key, string());
+                        break;
+                    case TRUE:
+                        options.putIfAbsent(key, Boolean.TRUE);
+                        break;
+                    case FALSE:
+                        options.putIfAbsent(key, Boolean.FALSE);
+                        break;
+                    case INT:
+                        options.putIfAbsent(key, readInt());
+                        break;
+                    case LONG:
+                        options.putIfAbsent(key, readLong());
+                        break;
+                    case DOUBLE:
+                        options.putIfAbsent(key, Double.longBitsToDouble(readLong()));
+                        break;
+                    default:
+                        throw new IOException("corrupt rule set: option type " + type);
+                }
+            }
+            return options;
+        }
+
+        private String string() throws IOException {
+            int ref = readVarInt();
+            if (ref > strings.length) {
+                throw new IOException("corrupt rule set: string " + ref);
+            }
+            return ref == 0 ? null : strings[ref - 1];
+        }
+
+        /**
+         * A count that must fit in the remaining input, so corrupt data cannot trigger huge allocations.
+         */
+        private int count() throws IOException {
+            int count = readVarInt();
+            if (count > data.length - pos) {
+                throw new IOException("corrupt rule set: count " + count);
+            }
+            return count;
+        }
+
+        private String readString() throws IOException {
+            int length = count();
+            String value = new String(data, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return value;
+        }
+
+        private int readVarInt() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    if (value < 0) {
+                        throw new IOException("corrupt rule set: varint");
+                    }
+                    return value;
+                }
+            }
+            throw new IOException("corrupt rule set: varint");
+        }
+
+        private int readInt() throws IOException {
+            return (readByte() << 24) | (readByte() << 16) | (readByte() << 8) | readByte();
+        }
+
+        private long readLong() throws IOException {
+            return ((long) readInt() << 32) | (readInt() & 0xFFFFFFFFL);
+        }
+
+        private int readByte() throws IOException {
+            if (pos >= data.length) {
+                throw new EOFException("truncated rule set");
+            }
+            return data[pos++] & 0xFF;
+        }
+    }
+
+    /**
+     * Growable byte array; unlike {@code DataOutputStream} it is unsynchronized and has varints.
+     */
+    private static final class Buffer {
+        private byte[] bytes = new byte[1024];
+        private int size;
+
+        void writeVarInt(int value) {
+            while ((value & ~0x7F) != 0) {
+                writeByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            writeByte(value);
+        }
+
+        void writeInt(int value) {
+            writeByte(value >>> 24);
+            writeByte(value >>> 16);
+            writeByte(value >>> 8);
+            writeByte(value);
+        }
+
+        void writeLong(long value) {
+            writeInt((int) (value >>> 32));
+            writeInt((int) value);
+        }
+
+        void writeString(String value) {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(utf8.length);
+            ensure(utf8.length);
+            System.arraycopy(utf8, 0, bytes, size, utf8.length);
+            size += utf8.length;
+        }
+
+        void writeTo(OutputStream out) throws IOException {
+            out.write(bytes, 0, size);
+        }
+
+        private void writeByte(int b) {
+            ensure(1);
+            bytes[size++] = (byte) b;
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > bytes.length) {
+                byte[] grown = new byte[Math.max(bytes.length * 2, size + extra)];
+                System.arraycopy(bytes, 0, grown, 0, size);
+                bytes = grown;
+            }
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package tv.tvai.like;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Coarse structural view of a CSS selector, used to decide cheaply which elements a compiled
+ * rule could possibly match. Only the plain tag, id and class parts of each compound are kept;
+ * attribute and pseudo selectors are ignored, which can only make the shape less selective,
+ * never wrong. Selectors the scanner does not understand (escapes, leading combinators) become
+ * {@link #UNKNOWN}, which matches every element.
+ */
+final class SelectorShape {
+
+    static final SelectorShape UNKNOWN = new SelectorShape(Collections.<List<Compound>>emptyList(), true);
+
+    /**
+     * The plain parts of one compound selector such as {@code div.a.b#x[href]}.
+     */
+    static final class Compound {
+        final String tag;
+        final String id;
+        final List<String> classes;
+        /**
+         * Combinator joining this compound to the one on its left, or {@code 0} for the first one.
+         */
+        final char combinator;
+
+        Compound(String tag, String id, List<String> classes, char combinator) {
+            this.tag = tag;
+            this.id = id;
+            this.classes = classes;
+            this.combinator = combinator;
+        }
+
+        boolean isUniversal() {
+            return tag == null && id == null && classes.isEmpty();
+        }
+    }
+
+    private final List<List<Compound>> groups;
+    private final boolean unknown;
+
+    private SelectorShape(List<List<Compound>> groups, boolean unknown) {
+        this.groups = groups;
+        this.unknown = unknown;
+    }
+
+    /**
+     * Comma separated groups, each a list of compounds from left to right.
+     */
+    List<List<Compound>> groups() {
+        return groups;
+    }
+
+    boolean isUnknown() {
+        return unknown;
+    }
+
+    static SelectorShape of(String selector) {
+        if (selector == null || selector.trim().isEmpty() || selector.indexOf('\\') >= 0) {
+            return UNKNOWN;
+        }
+        List<List<Compound>> groups = new ArrayList<>();
+        for (String group : splitTopLevel(selector)) {
+            List<Compound> compounds = parseGroup(group);
+            if (compounds == null) {
+                return UNKNOWN;
+            }
+            groups.add(Collections.unmodifiableList(compounds));
+        }
+        if (groups.isEmpty()) {
+            return UNKNOWN;
+        }
+        return new SelectorShape(Collections.unmodifiableList(groups), false);
+    }
+
+    private static List<String> splitTopLevel(String selector) {
+        List<String> parts = new ArrayList<>();
+        int depth = 0;
+        char quote = 0;
+        int start = 0;
+        for (int i = 0; i < selector.length(); i++) {
+            char c = selector.charAt(i);
+            if (quote != 0) {
+                if (c == quote) quote = 0;
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '(' || c == '[') {
+                depth++;
+            } else if (c == ')' || c == ']') {
+                depth--;
+            } else if (c == ',' && depth == 0) {
+                parts.add(selector.substring(start, i).trim());
+                start = i + 1;
+            }
+        }
+        parts.add(selector.substring(start).trim());
+        return parts;
+    }
+
+    private static List<Compound> parseGroup(String group) {
+        if (group.isEmpty()) {
+            return null;
+        }
+        List<Compound> compounds = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        char combinator = 0;
+        int depth = 0;
+        char quote = 0;
+        int i = 0;
+        while (i < group.length()) {
+            char c = group.charAt(i);
+            if (depth == 0 && quote == 0 && isCombinatorChar(c)) {
+                char found = ' ';
+                while (i < group.length() && isCombinatorChar(group.charAt(i))) {
+                    if (!Character.isWhitespace(group.charAt(i))) {
+                        found = group.charAt(i);
+                    }
+                    i++;
+                }
+                if (current.length() == 0) {
+                    return null;
+                }
+                compounds.add(parseCompound(current.toString(), combinator));
+                current.setLength(0);
+                combinator = found;
+                continue;
+            }
+            if (quote != 0) {
+                if (c == quote) quote = 0;
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '(' || c == '[') {
+                depth++;
+            } else if (c == ')' || c == ']') {
+                depth--;
+            }
+            current.append(c);
+            i++;
+        }
+        if (current.length() == 0) {
+            return null;
+        }
+        compounds.add(parseCompound(current.toString(), combinator));
+        return compounds;
+    }
+
+    private static boolean isCombinatorChar(char c) {
+        return Character.isWhitespace(c) || c == '>' || c == '+' || c == '~';
+    }
+
+    private static Compound parseCompound(String text, char combinator) {
+        String tag = null;
+        String id = null;
+        List<String> classes = new ArrayList<>(2);
+        int i = readName(text, 0);
+        if (i > 0) {
+            String name = text.substring(0, i);
+            if (name.indexOf('|') < 0) {
+                tag = name.toLowerCase(Locale.ENGLISH);
+            }
+        } else if (text.startsWith("*")) {
+            i = 1;
+        }
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (c == '.' || c == '#') {
+                int end = readName(text, i + 1);
+                if (end > i + 1) {
+                    String name = text.substring(i + 1, end);
+                    if (c == '.') {
+                        classes.add(foldCase(name));
+                    } else if (id == null) {
+                        id = name;
+                    }
+                }
+                i = Math.max(end, i + 1);
+            } else if (c == '[' || c == '(') {
+                i = skipBlock(text, i);
+            } else {
+                i++;
+            }
+        }
+        return new Compound(tag, id, classes.isEmpty() ? Collections.<String>emptyList() : classes, combinator);
+    }
+
+    /**
+     * Case folding matching {@link String#equalsIgnoreCase}, which jsoup uses for class names.
+     * Unlike {@code toLowerCase} it never changes the length of the string.
+     */
+    static String foldCase(String text) {
+        char[] folded = null;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            char f = foldCase(c);
+            if (f != c) {
+                if (folded == null) {
+                    folded = text.toCharArray();
+                }
+                folded[i] = f;
+            }
+        }
+        return folded == null ? text : new String(folded);
+    }
+
+    static char foldCase(char c) {
+        if (c < 0x80) {
+            return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    private static int readName(String text, int start) {
+        int i = start;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c) || c == '-' || c == '_' || c == '|' || c > 0x7f) {
+                i++;
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    private static int skipBlock(String text, int start) {
+        int depth = 0;
+        char quote = 0;
+        for (int i = start; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quote != 0) {
+                if (c == quote) quote = 0;
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '(' || c == '[') {
+                depth++;
+            } else if (c == ')' || c == ']') {
+                depth--;
+                if (depth == 0) {
+                    return i + 1;
+                }
+            }
+        }
+        return text.length();
+    }
+}
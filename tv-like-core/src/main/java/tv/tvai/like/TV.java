@@ -2,56 +2,536 @@ package tv.tvai.like;
 
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
+import tv.tvai.like.util.DaemonThreadFactory;
 import tv.tvai.like.util.StringUtils;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class TV {
 
+    private static final int IO_THREADS = 8;
+    private static final int IO_QUEUE_SIZE = 256;
+    private static final int CPU_QUEUE_SIZE = 256;
+    private static volatile ExecutorService ioExecutor;
+    private static volatile ExecutorService cpuExecutor;
+
     private final String html;
     private final String dslHub;
     private final String url;
+    private final ExtractOptions options;
 
     public TV(String html, String url) {
-        this.html = html;
-        this.url = url;
-        this.dslHub = null;
+        this(html, url, null, null);
     }
 
     public TV(String html, String url, String dslHub) {
+        this(html, url, dslHub, null);
+    }
+
+    public TV(String html, String url, String dslHub, ExtractOptions options) {
         this.html = html;
         this.url = url;
         this.dslHub = dslHub;
+        this.options = options;
     }
 
     public List<Map<String, Object>> like() {
-        List<Map<String, Object>> emptyResult = new ArrayList<>();
-        if (StringUtils.isBlank(html) || StringUtils.isBlank(url)) {
-            return emptyResult;
-        }
+        return like(html, url, newDsl(dslHub), options, null, null);
+    }
+
+    /**
+     * Writes the {@link #like()} result to {@code out} as JSON while the document is walked,
+     * without building the intermediate maps. The output is the same as serializing the
+     * {@link #like()} result with Jackson's default {@code ObjectMapper}, with one exception:
+     * where {@link #like()} swallows a failure during extraction and returns an empty list, this
+     * method has already written part of the result, so it throws instead. {@code out} is flushed
+     * but not closed.
+     *
+     * @throws IOException if writing to {@code out} fails, or if extraction fails; {@code out}
+     *                     may then hold partial JSON
+     */
+    public void likeJson(Writer out) throws IOException {
+        JsonExtractionSink sink = new JsonExtractionSink(out);
+        Job job = null;
+        RuleSet ruleSet = null;
         try {
-            URL u = new URL(url);
-            Document doc = Jsoup.parse(html, u.toExternalForm());
-            TVLikeDSL tvLikeDSL = dslHub == null ? new TVLikeDSL() : new TVLikeDSL(dslHub);
+            job = Job.parse(html, url);
+            if (job != null) {
+                ruleSet = ruleSetOf(job, newDsl(dslHub), null, null);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            ruleSet = null;
+        } catch (RuntimeException e) {
+            // Nothing written yet, so this is the empty result like() would return.
+            ruleSet = null;
+        }
+        if (ruleSet != null) {
+            try {
+                job.extract(ruleSet, options, sink, null);
+            } catch (RuntimeException e) {
+                throw new IOException("Extraction failed after JSON output had started", e);
+            }
+        }
+        sink.finish();
+    }
 
-            String path = u.getPath();
-            String host = u.getHost();
-
-            String dsl = tvLikeDSL.getDSL(doc, host);
-            if (StringUtils.isBlank(dsl)) return emptyResult;
-            RuleParser parser = new RuleParser();
-            parser.parse(dsl);
-            List<RuleNode> rules = parser.getPathRule(StringUtils.isBlank(path) ? "/" : path);
-            if (rules.isEmpty()) {
+    /**
+     * {@link #likeJson(Writer)} to a UTF-8 encoded stream. {@code out} is flushed but not closed.
+     */
+    public void likeJson(OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        likeJson(writer);
+    }
+
+    /**
+     * Extracts every page on the shared daemon CPU pool using the default hub.
+     *
+     * @see #likeAll(Collection, String, ExtractOptions, ExecutorService)
+     */
+    public static List<List<Map<String, Object>>> likeAll(Collection<Page> pages) {
+        return likeAll(pages, null, null, null);
+    }
+
+    /**
+     * Extracts every page on {@code executor} using the default hub.
+     *
+     * @see #likeAll(Collection, String, ExtractOptions, ExecutorService)
+     */
+    public static List<List<Map<String, Object>>> likeAll(Collection<Page> pages, ExecutorService executor) {
+        return likeAll(pages, null, null, executor);
+    }
+
+    /**
+     * Extracts a batch of pages in parallel. Pages without an inline DSL resolve the hub DSL and
+     * compile its {@link RuleSet} once per host for the whole batch, however many pages share it.
+     * <p>
+     * The returned list has one entry per page, in iteration order of {@code pages}. A page that
+     * fails, or that is still pending when the calling thread is interrupted, gets an empty list;
+     * it never fails the rest of the batch.
+     *
+     * @param dslHub   hub base URL, or {@code null} for the default hub
+     * @param options  extraction options shared by every page, may be {@code null}
+     * @param executor where pages are extracted; {@code null} means a shared daemon pool with one
+     *                 thread per processor. The executor is not shut down.
+     */
+    public static List<List<Map<String, Object>>> likeAll(Collection<Page> pages, String dslHub,
+                                                          ExtractOptions options, ExecutorService executor) {
+        List<List<Map<String, Object>>> results = new ArrayList<>();
+        if (pages == null || pages.isEmpty()) {
+            return results;
+        }
+        ExecutorService pool = executor != null ? executor : cpuExecutor();
+        TVLikeDSL tvLikeDSL = newDsl(dslHub);
+        HostRuleSets hosts = new HostRuleSets(tvLikeDSL);
+        List<Future<List<Map<String, Object>>>> futures = new ArrayList<>(pages.size());
+        for (Page page : pages) {
+            Callable<List<Map<String, Object>>> task = new PageTask(page, tvLikeDSL, options, hosts);
+            try {
+                futures.add(pool.submit(task));
+            } catch (RejectedExecutionException e) {
+                futures.add(runInline(task));
+            }
+        }
+        boolean interrupted = false;
+        for (Future<List<Map<String, Object>>> future : futures) {
+            List<Map<String, Object>> result = null;
+            if (!interrupted) {
+                try {
+                    result = future.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    result = null;
+                }
+            }
+            if (interrupted) {
+                future.cancel(true);
+            }
+            results.add(result != null ? result : new ArrayList<Map<String, Object>>());
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return results;
+    }
+
+    /**
+     * Asynchronous {@link #like()}: the hub lookup runs on a shared daemon I/O pool and parsing
+     * and extraction on a shared daemon CPU pool.
+     *
+     * @see #likeAsync(Executor, Executor, Callback)
+     */
+    public Future<List<Map<String, Object>>> likeAsync() {
+        return likeAsync(null, null, null);
+    }
+
+    /**
+     * Asynchronous {@link #like()} on the shared pools that also hands the result to {@code callback}.
+     *
+     * @see #likeAsync(Executor, Executor, Callback)
+     */
+    public Future<List<Map<String, Object>>> likeAsync(Callback callback) {
+        return likeAsync(null, null, callback);
+    }
+
+    /**
+     * Asynchronous {@link #like()}. Parsing and extraction run on {@code cpuExecutor}; only a page
+     * without an inline DSL hops to {@code ioExecutor} for the hub lookup. A stage an executor
+     * rejects runs on the thread that submitted it. Like {@link #like()} the future never fails on
+     * bad input or hub failures, it yields an empty list instead.
+     * <p>
+     * Cancelling the returned future aborts the in-flight hub request and stops the document walk
+     * at the next element; stages that have not started yet are skipped.
+     *
+     * @param ioExecutor  runs the hub lookup; {@code null} for a shared daemon pool
+     * @param cpuExecutor parses and extracts; {@code null} for a shared daemon pool
+     * @param callback    gets the result on the thread that finished it, unless the future was
+     *                    cancelled first; may be {@code null}
+     */
+    public Future<List<Map<String, Object>>> likeAsync(Executor ioExecutor, Executor cpuExecutor,
+                                                       Callback callback) {
+        AsyncLike async = new AsyncLike(html, url, newDsl(dslHub), options,
+                ioExecutor != null ? ioExecutor : ioExecutor(),
+                cpuExecutor != null ? cpuExecutor : cpuExecutor(), callback);
+        async.start();
+        return async;
+    }
+
+    /**
+     * Blocking {@link #like()} against a caller-owned {@link TVLikeDSL}, for hosts that keep one
+     * resolver for their whole lifetime and cancel abandoned requests themselves.
+     *
+     * @param cancellation aborts the hub lookup and the document walk once cancelled; may be {@code null}
+     */
+    static List<Map<String, Object>> like(String html, String url, TVLikeDSL tvLikeDSL,
+                                          ExtractOptions options, Cancellation cancellation) {
+        return like(html, url, tvLikeDSL, options, null, cancellation);
+    }
+
+    private static List<Map<String, Object>> like(String html, String url, TVLikeDSL tvLikeDSL,
+                                                  ExtractOptions options, HostRuleSets hosts,
+                                                  Cancellation cancellation) {
+        List<Map<String, Object>> emptyResult = new ArrayList<>();
+        try {
+            Job job = Job.parse(html, url);
+            if (job == null) {
                 return emptyResult;
             }
-            Extractor extractor = new Extractor();
-            return extractor.extract(doc, rules);
+            RuleSet ruleSet = ruleSetOf(job, tvLikeDSL, hosts, cancellation);
+            if (ruleSet == null) return emptyResult;
+            MapExtractionSink sink = new MapExtractionSink();
+            job.extract(ruleSet, options, sink, cancellation);
+            return sink.getResult();
         } catch (Exception e) {
             return emptyResult;
         }
     }
+
+    private static RuleSet ruleSetOf(Job job, TVLikeDSL tvLikeDSL, HostRuleSets hosts,
+                                     Cancellation cancellation) throws InterruptedException {
+        if (StringUtils.isNotBlank(job.dsl)) {
+            return RuleSetCache.shared().get(job.dsl);
+        }
+        if (hosts != null) {
+            return hosts.get(job.host);
+        }
+        return tvLikeDSL.getHubRuleSet(job.host, cancellation);
+    }
+
+    private static TVLikeDSL newDsl(String dslHub) {
+        return dslHub == null ? new TVLikeDSL() : new TVLikeDSL(dslHub);
+    }
+
+    private static Executor ioExecutor() {
+        ExecutorService executor = ioExecutor;
+        if (executor == null) {
+            synchronized (TV.class) {
+                executor = ioExecutor;
+                if (executor == null) {
+                    ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                            IO_THREADS, IO_THREADS, 30, TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<Runnable>(IO_QUEUE_SIZE),
+                            new DaemonThreadFactory("tv-like-io-"));
+                    pool.allowCoreThreadTimeOut(true);
+                    ioExecutor = executor = pool;
+                }
+            }
+        }
+        return executor;
+    }
+
+    private static ExecutorService cpuExecutor() {
+        ExecutorService executor = cpuExecutor;
+        if (executor == null) {
+            synchronized (TV.class) {
+                executor = cpuExecutor;
+                if (executor == null) {
+                    int threads = Runtime.getRuntime().availableProcessors();
+                    ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                            threads, threads, 30, TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<Runnable>(CPU_QUEUE_SIZE),
+                            new DaemonThreadFactory("tv-like-cpu-"));
+                    pool.allowCoreThreadTimeOut(true);
+                    cpuExecutor = executor = pool;
+                }
+            }
+        }
+        return executor;
+    }
+
+    private static <T> Future<T> runInline(Callable<T> task) {
+        FutureTask<T> future = new FutureTask<>(task);
+        future.run();
+        return future;
+    }
+
+    /**
+     * Receives the result of {@link #likeAsync(Callback)}.
+     */
+    public interface Callback {
+        void onResult(List<Map<String, Object>> result);
+    }
+
+    /**
+     * One page on its way through the pipeline. {@code dsl} is the inline DSL, if any; without
+     * one, {@code hubRuleSet} is filled in from the hub.
+     */
+    private static final class Job {
+        private final Document doc;
+        private final String path;
+        private final String host;
+        private final String dsl;
+        private volatile RuleSet hubRuleSet;
+
+        private Job(Document doc, String path, String host, String dsl) {
+            this.doc = doc;
+            this.path = path;
+            this.host = host;
+            this.dsl = dsl;
+        }
+
+        /**
+         * @return {@code null} when there is nothing to extract from
+         */
+        static Job parse(String html, String url) {
+            if (StringUtils.isBlank(html) || StringUtils.isBlank(url)) {
+                return null;
+            }
+            URL u;
+            try {
+                u = new URL(url);
+            } catch (MalformedURLException e) {
+                return null;
+            }
+            Document doc = Jsoup.parse(html, u.toExternalForm());
+            String path = u.getPath();
+            return new Job(doc, StringUtils.isBlank(path) ? "/" : path, u.getHost(), TVLikeDSL.extractRulesFromScript(doc));
+        }
+
+        List<Map<String, Object>> extract(RuleSet ruleSet, ExtractOptions options, Cancellation cancellation) {
+            MapExtractionSink sink = new MapExtractionSink();
+            extract(ruleSet, options, sink, cancellation);
+            return sink.getResult();
+        }
+
+        void extract(RuleSet ruleSet, ExtractOptions options, ExtractionSink sink, Cancellation cancellation) {
+            List<RuleNode> rules = ruleSet.getPathRule(path);
+            if (!rules.isEmpty()) {
+                new Extractor(options).extract(doc, rules, sink, cancellation);
+            }
+        }
+    }
+
+    /**
+     * A {@link #likeAsync} run: parse on the CPU executor, look up the hub DSL on the I/O executor
+     * when there is no inline one, then extract back on the CPU executor. Each stage completes the
+     * future itself or hands over to the next; cancelling fires {@code cancellation}.
+     */
+    private static final class AsyncLike extends FutureTask<List<Map<String, Object>>> {
+        private static final Runnable NOTHING = new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+
+        private final String html;
+        private final String url;
+        private final TVLikeDSL tvLikeDSL;
+        private final ExtractOptions options;
+        private final Executor io;
+        private final Executor cpu;
+        private final Callback callback;
+        private final Cancellation cancellation = new Cancellation();
+
+        private AsyncLike(String html, String url, TVLikeDSL tvLikeDSL, ExtractOptions options,
+                          Executor io, Executor cpu, Callback callback) {
+            super(NOTHING, null);
+            this.html = html;
+            this.url = url;
+            this.tvLikeDSL = tvLikeDSL;
+            this.options = options;
+            this.io = io;
+            this.cpu = cpu;
+            this.callback = callback;
+        }
+
+        void start() {
+            submit(cpu, new Stage() {
+                @Override
+                void step() {
+                    final Job job = Job.parse(html, url);
+                    if (job == null) {
+                        set(new ArrayList<Map<String, Object>>());
+                    } else if (StringUtils.isNotBlank(job.dsl)) {
+                        extract(job, RuleSetCache.shared().get(job.dsl));
+                    } else {
+                        submit(io, new Stage() {
+                            @Override
+                            void step() throws InterruptedException {
+                                job.hubRuleSet = tvLikeDSL.getHubRuleSet(job.host, cancellation);
+                                submit(cpu, new Stage() {
+                                    @Override
+                                    void step() {
+                                        extract(job, job.hubRuleSet);
+                                    }
+                                });
+                            }
+                        });
+                    }
+                }
+            });
+        }
+
+        private void extract(Job job, RuleSet ruleSet) {
+            set(ruleSet == null ? new ArrayList<Map<String, Object>>() : job.extract(ruleSet, options, cancellation));
+        }
+
+        private void submit(Executor executor, Stage stage) {
+            try {
+                executor.execute(stage);
+            } catch (RejectedExecutionException e) {
+                stage.run();
+            }
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled()) {
+                cancellation.cancel();
+            } else if (callback != null) {
+                try {
+                    callback.onResult(get());
+                } catch (InterruptedException | ExecutionException e) {
+                    // Unreachable once done: stages only ever set a value.
+                }
+            }
+        }
+
+        /**
+         * One step of the run. Skipped once the future is done; any failure completes it with an
+         * empty result, as {@link TV#like()} would.
+         */
+        private abstract class Stage implements Runnable {
+            @Override
+            public final void run() {
+                if (isDone()) {
+                    return;
+                }
+                try {
+                    step();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    set(new ArrayList<Map<String, Object>>());
+                } catch (RuntimeException e) {
+                    set(new ArrayList<Map<String, Object>>());
+                }
+            }
+
+            abstract void step() throws InterruptedException;
+        }
+    }
+
+    private static final class PageTask implements Callable<List<Map<String, Object>>> {
+        private final Page page;
+        private final TVLikeDSL tvLikeDSL;
+        private final ExtractOptions options;
+        private final HostRuleSets hosts;
+
+        private PageTask(Page page, TVLikeDSL tvLikeDSL, ExtractOptions options, HostRuleSets hosts) {
+            this.page = page;
+            this.tvLikeDSL = tvLikeDSL;
+            this.options = options;
+            this.hosts = hosts;
+        }
+
+        @Override
+        public List<Map<String, Object>> call() {
+            if (page == null) {
+                return new ArrayList<>();
+            }
+            return like(page.getHtml(), page.getUrl(), tvLikeDSL, options, hosts, null);
+        }
+    }
+
+    /**
+     * Hub rule sets of one batch, keyed by host. The first page of a host resolves and compiles;
+     * concurrent pages of the same host wait for that result instead of fetching again.
+     */
+    private static final class HostRuleSets {
+        private final TVLikeDSL tvLikeDSL;
+        private final ConcurrentMap<String, FutureTask<RuleSet>> byHost = new ConcurrentHashMap<>();
+
+        private HostRuleSets(TVLikeDSL tvLikeDSL) {
+            this.tvLikeDSL = tvLikeDSL;
+        }
+
+        RuleSet get(final String host) throws InterruptedException {
+            if (StringUtils.isBlank(host)) {
+                return null;
+            }
+            FutureTask<RuleSet> task = byHost.get(host);
+            if (task == null) {
+                FutureTask<RuleSet> created = new FutureTask<>(new Callable<RuleSet>() {
+                    @Override
+                    public RuleSet call() throws InterruptedException {
+                        return tvLikeDSL.getHubRuleSet(host, null);
+                    }
+                });
+                task = byHost.putIfAbsent(host, created);
+                if (task == null) {
+                    task = created;
+                    created.run();
+                }
+            }
+            try {
+                return task.get();
+            } catch (ExecutionException e) {
+                return null;
+            }
+        }
+    }
 }
@@ -2,32 +2,132 @@ package tv.tvai.like;
 
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
+import tv.tvai.like.enums.ResolveModeEnum;
+import tv.tvai.like.util.DaemonThreadFactory;
+import tv.tvai.like.util.SingleFlight;
 import tv.tvai.like.util.StringUtils;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class TVLikeDSL {
 
-    private static final int CONNECT_TIMEOUT_MILLIS = 10_000;
-    private static final int READ_TIMEOUT_MILLIS = 30_000;
-    private static final String DEFAULT_USER_AGENT = "Mozilla/5.0";
+    /**
+     * Default bound on one host lookup, all candidates and revalidations included.
+     */
+    public static final long DEFAULT_LOOKUP_TIMEOUT_MILLIS = 15_000;
+    private static final long REQUEST_TIMEOUT_MILLIS = 30_000;
+    private static final HubResponse NOT_FOUND = new HubResponse(404, null, null, null);
+    private static final int RESOLVER_THREADS = 8;
+    private static final int RESOLVER_QUEUE_SIZE = 256;
+    private static final String BATCH_PATH = "batch";
+    private static final int PREFETCH_BATCH_SIZE = 200;
+    private static final int PREFETCH_THREADS = 4;
+    /**
+     * How long a cancellable caller waits on another caller's host lookup before checking its own
+     * {@link Cancellation} again.
+     */
+    private static final long FLIGHT_WAIT_SLICE_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static volatile ExecutorService resolverExecutor;
+    private static volatile ExecutorService prefetchExecutor;
+    /**
+     * Hub rule set lookups in progress, shared by every instance that resolves against the same
+     * hub, cache and pack.
+     */
+    private static final SingleFlight<FlightKey, RuleSet> HOST_FLIGHTS = new SingleFlight<FlightKey, RuleSet>();
     private String tv_like_dsl_hub = "https://hub.tvai.tv/";
+    private final DslCache cache;
+    private DslPack pack = DslPack.shared();
+    private ResolveModeEnum resolveMode = ResolveModeEnum.SEQUENTIAL;
+    private long lookupTimeoutMillis = DEFAULT_LOOKUP_TIMEOUT_MILLIS;
+    private boolean staleWhileRevalidate = true;
+    /**
+     * Runs stale-while-revalidate refreshes; {@code null} until the first stale hit picks the shared one.
+     */
+    private DslRefresher refresher;
 
     public TVLikeDSL() {
+        this.cache = DslCache.shared();
     }
 
     public TVLikeDSL(String dslHub) {
+        this(dslHub, DslCache.shared());
+    }
+
+    public TVLikeDSL(String dslHub, DslCache cache) {
         if (StringUtils.isNotBlank(dslHub)) {
             tv_like_dsl_hub = dslHub.endsWith("/") ? dslHub : dslHub + "/";
         }
+        this.cache = cache;
+    }
+
+    public ResolveModeEnum getResolveMode() {
+        return resolveMode;
+    }
+
+    public void setResolveMode(ResolveModeEnum resolveMode) {
+        this.resolveMode = resolveMode == null ? ResolveModeEnum.SEQUENTIAL : resolveMode;
+    }
+
+    public long getLookupTimeoutMillis() {
+        return lookupTimeoutMillis;
+    }
+
+    /**
+     * Bounds a whole host lookup: every candidate request, sequential or concurrent, must finish
+     * within this time of the lookup starting, or the lookup gives up as if the hub were unreachable.
+     */
+    public void setLookupTimeoutMillis(long lookupTimeoutMillis) {
+        if (lookupTimeoutMillis <= 0) {
+            throw new IllegalArgumentException("lookupTimeoutMillis must be positive: " + lookupTimeoutMillis);
+        }
+        this.lookupTimeoutMillis = lookupTimeoutMillis;
+    }
+
+    public boolean isStaleWhileRevalidate() {
+        return staleWhileRevalidate;
+    }
+
+    /**
+     * When enabled, the default, an expired cached DSL is returned as is and revalidated in the
+     * background, so a lookup never waits for the hub once the host's DSL is cached. When
+     * disabled, the lookup revalidates it before returning.
+     */
+    public void setStaleWhileRevalidate(boolean staleWhileRevalidate) {
+        this.staleWhileRevalidate = staleWhileRevalidate;
+    }
+
+    void setRefresher(DslRefresher refresher) {
+        this.refresher = refresher;
+    }
+
+    public DslPack getPack() {
+        return pack;
+    }
+
+    /**
+     * Offline DSLs consulted before the hub; defaults to {@link DslPack#shared()}.
+     *
+     * @param pack the pack to use, or {@code null} to go to the hub only
+     */
+    public void setPack(DslPack pack) {
+        this.pack = pack;
     }
 
     public String getDSL(Document doc, String host) {
@@ -38,7 +138,7 @@ public class TVLikeDSL {
         return getHubDsl(host);
     }
 
-    private static String extractRulesFromScript(Document doc) {
+    static String extractRulesFromScript(Document doc) {
         if (doc == null) return "";
         Element script = doc.selectFirst("script[type=text/plain][name=tv-like]");
         if (script == null) return "";
@@ -47,11 +147,17 @@ public class TVLikeDSL {
                 .replace("&#10;", "\n")
                 .replace("&#13;", "\r\n")
                 .replace("\r\n", "\n")
-                .replaceAll("(?s)/\\*.*?\\*/", "")
                 .trim();
     }
 
-    private String getHubDsl(String host) {
+    String getHubDsl(String host) {
+        return getHubDsl(host, null);
+    }
+
+    /**
+     * @param cancellation aborts every hub request of this lookup once cancelled; may be {@code null}
+     */
+    String getHubDsl(String host, Cancellation cancellation) {
         if (StringUtils.isBlank(host)) {
             return null;
         }
@@ -59,6 +165,410 @@ public class TVLikeDSL {
         if (StringUtils.isBlank(normalizedHost)) {
             return null;
         }
+
+        String packed = getPackDsl(normalizedHost);
+        if (packed != null) {
+            return packed;
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lookupTimeoutMillis);
+        String routeKey = tv_like_dsl_hub + normalizedHost;
+        if (cache != null) {
+            HubRoute route = cache.getRoute(routeKey);
+            if (route != null) {
+                if (route.isMiss()) {
+                    return null;
+                }
+                HubResponse response = lookup(route.getUrl(), newCall(cancellation, deadline));
+                if (response.isSuccessful()) {
+                    return response.getBody();
+                }
+                if (response.isTransient()) {
+                    return null;
+                }
+                cache.removeRoute(routeKey);
+            }
+        }
+
+        List<String> urls = new ArrayList<String>();
+        for (String l : candidates(normalizedHost)) {
+            urls.add(tv_like_dsl_hub + l + ".dsl");
+        }
+        Resolution resolution = resolveMode == ResolveModeEnum.CONCURRENT && urls.size() > 1
+                ? resolveConcurrently(urls, cancellation, deadline)
+                : resolveSequentially(urls, cancellation, deadline);
+        if (cache != null) {
+            if (resolution.url != null) {
+                cache.putHit(routeKey, resolution.url);
+            } else if (resolution.definitiveMiss) {
+                // Only remember misses the hub actually answered; a timeout says nothing about the host.
+                cache.putMiss(routeKey);
+            }
+        }
+        return resolution.dsl;
+    }
+
+    /**
+     * Warms the caches for {@code hosts} ahead of their first page, e.g. with the sites a launcher
+     * offers at startup, so those pages need no hub round trip. Hosts are resolved in batches of
+     * up to 200 with one {@code POST} to the hub's {@code batch} route; if the hub does not answer
+     * it, hosts are looked up one by one as usual, a few at a time. Each DSL found is stored in the
+     * {@link DslCache}, together with the host's route, and compiled into the shared
+     * {@link RuleSetCache}. Blocks until done, so call it off any latency-sensitive thread.
+     * <p>
+     * The batch route receives {@code {"hosts": [...]}} with normalized hosts and answers a JSON
+     * object keyed by those hosts. A value of {@code null} means the hub has no DSL for the host;
+     * otherwise it is {@code {"path": ..., "dsl": ..., "etag": ...}}, where {@code path} is the
+     * candidate that matched, as in the hub url without {@code .dsl}, and {@code etag} is optional.
+     * Hosts missing from the answer are looked up one by one.
+     *
+     * @return the number of hosts that have a DSL, from the pack or the hub
+     */
+    public int prefetch(Collection<String> hosts) {
+        if (hosts == null || hosts.isEmpty()) {
+            return 0;
+        }
+        int resolved = 0;
+        List<String> pending = new ArrayList<String>();
+        for (String host : new LinkedHashSet<String>(normalizeHosts(hosts))) {
+            if (getPackDsl(host) != null) {
+                resolved++;
+            } else {
+                pending.add(host);
+            }
+        }
+        List<String> remaining = new ArrayList<String>();
+        for (int from = 0; from < pending.size(); from += PREFETCH_BATCH_SIZE) {
+            List<String> batch = pending.subList(from, Math.min(pending.size(), from + PREFETCH_BATCH_SIZE));
+            Map<?, ?> answer = postBatch(batch);
+            if (answer == null) {
+                remaining.addAll(batch);
+                continue;
+            }
+            for (String host : batch) {
+                Object value = answer.get(host);
+                if (value == null && answer.containsKey(host)) {
+                    if (cache != null) {
+                        cache.putMiss(tv_like_dsl_hub + host);
+                    }
+                } else if (value instanceof Map && storeBatchDsl(host, (Map<?, ?>) value)) {
+                    resolved++;
+                } else {
+                    remaining.add(host);
+                }
+            }
+        }
+        return resolved + prefetchEach(remaining);
+    }
+
+    private static List<String> normalizeHosts(Collection<String> hosts) {
+        List<String> normalized = new ArrayList<String>(hosts.size());
+        for (String host : hosts) {
+            String h = normalizeHost(host);
+            if (StringUtils.isNotBlank(h)) {
+                normalized.add(h);
+            }
+        }
+        return normalized;
+    }
+
+    /**
+     * @return the hub's answer, or {@code null} if it has no batch route or did not answer usefully
+     */
+    private Map<?, ?> postBatch(List<String> hosts) {
+        StringBuilder body = new StringBuilder("{\"hosts\":[");
+        for (int i = 0; i < hosts.size(); i++) {
+            if (i > 0) {
+                body.append(',');
+            }
+            body.append(Json.quote(hosts.get(i)));
+        }
+        body.append("]}");
+        HubResponse response = HubClient.postJson(tv_like_dsl_hub + BATCH_PATH, body.toString(),
+                HubCall.withTimeout(lookupTimeoutMillis));
+        if (!response.isSuccessful() || StringUtils.isBlank(response.getBody())) {
+            return null;
+        }
+        try {
+            Object answer = Json.parse(response.getBody());
+            return answer instanceof Map ? (Map<?, ?>) answer : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Caches one host of a batch answer as if it had been fetched from {@code <hub><path>.dsl}.
+     *
+     * @return {@code false} if the entry is unusable, e.g. its path is not a candidate of {@code host}
+     */
+    private boolean storeBatchDsl(String host, Map<?, ?> value) {
+        Object dsl = value.get("dsl");
+        Object path = value.get("path");
+        if (!(dsl instanceof String) || StringUtils.isBlank((String) dsl)
+                || !(path instanceof String) || !candidates(host).contains(path)) {
+            return false;
+        }
+        String text = ((String) dsl).trim();
+        if (cache != null) {
+            String url = tv_like_dsl_hub + path + ".dsl";
+            Object etag = value.get("etag");
+            long now = System.currentTimeMillis();
+            cache.put(new DslCacheEntry(url, text, etag instanceof String ? (String) etag : null, null,
+                    now, now + cache.getTtlMillis()));
+            cache.putHit(tv_like_dsl_hub + host, url);
+        }
+        RuleSetCache.shared().get(text);
+        return true;
+    }
+
+    /**
+     * Looks {@code hosts} up one by one, at most {@value #PREFETCH_THREADS} at a time.
+     */
+    private int prefetchEach(List<String> hosts) {
+        if (hosts.isEmpty()) {
+            return 0;
+        }
+        final ConcurrentLinkedQueue<String> queue = new ConcurrentLinkedQueue<String>(hosts);
+        final AtomicInteger resolved = new AtomicInteger();
+        Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                String host;
+                while ((host = queue.poll()) != null) {
+                    try {
+                        if (getHubRuleSet(host, null) != null) {
+                            resolved.incrementAndGet();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        };
+        List<Future<?>> workers = new ArrayList<Future<?>>();
+        try {
+            for (int i = Math.min(PREFETCH_THREADS, hosts.size()); i > 0; i--) {
+                workers.add(prefetchExecutor().submit(worker));
+            }
+        } catch (RejectedExecutionException e) {
+            worker.run();
+        }
+        for (Future<?> future : workers) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                queue.clear();
+                break;
+            } catch (ExecutionException e) {
+                // A worker only fails on a bug; the others still drain the queue.
+            }
+        }
+        return resolved.get();
+    }
+
+    /**
+     * Resolves and compiles the hub DSL of {@code host}. Concurrent calls for the same hub and host
+     * are coalesced: one of them does the lookup and compiles, the others wait for its result,
+     * for at most the lookup timeout, and give up with {@code null} after that. Should the caller
+     * doing the work be cancelled, a waiter that is not cancelled itself takes over the lookup.
+     *
+     * @param cancellation aborts the hub lookup, or the wait for another caller's, once cancelled;
+     *                     may be {@code null}
+     * @return {@code null} if the host has no hub DSL or it could not be fetched in time
+     */
+    RuleSet getHubRuleSet(final String host, final Cancellation cancellation) throws InterruptedException {
+        String normalizedHost = normalizeHost(host);
+        if (StringUtils.isBlank(normalizedHost)) {
+            return null;
+        }
+        Callable<RuleSet> fetchAndCompile = new Callable<RuleSet>() {
+            @Override
+            public RuleSet call() {
+                String dsl = getHubDsl(host, cancellation);
+                if (cancellation != null && cancellation.isCancelled()) {
+                    throw new CancellationException();
+                }
+                return StringUtils.isBlank(dsl) ? null : RuleSetCache.shared().get(dsl);
+            }
+        };
+        FlightKey key = new FlightKey(tv_like_dsl_hub, normalizedHost, cache, pack);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lookupTimeoutMillis);
+        while (true) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || (cancellation != null && cancellation.isCancelled())) {
+                return null;
+            }
+            // Cancellation cannot wake a thread waiting on someone else's flight, so wait in slices.
+            long wait = cancellation == null ? remaining : Math.min(remaining, FLIGHT_WAIT_SLICE_NANOS);
+            try {
+                return HOST_FLIGHTS.execute(key, fetchAndCompile, wait, TimeUnit.NANOSECONDS);
+            } catch (ExecutionException e) {
+                boolean abandoned = e.getCause() instanceof CancellationException
+                        && (cancellation == null || !cancellation.isCancelled());
+                if (!abandoned) {
+                    return null;
+                }
+            } catch (TimeoutException e) {
+                if (wait == remaining) {
+                    return null;
+                }
+            }
+        }
+    }
+
+    private String getPackDsl(String normalizedHost) {
+        DslPack pack = this.pack;
+        if (pack == null) {
+            return null;
+        }
+        for (String l : candidates(normalizedHost)) {
+            String dsl = pack.get(l);
+            if (dsl != null) {
+                return dsl;
+            }
+        }
+        return null;
+    }
+
+    private Resolution resolveSequentially(List<String> urls, Cancellation cancellation, long deadline) {
+        boolean definitiveMiss = true;
+        for (String reqUrl : urls) {
+            if (cancellation != null && cancellation.isCancelled()) {
+                return Resolution.miss(false);
+            }
+            HubResponse response = lookup(reqUrl, newCall(cancellation, deadline));
+            if (response.isSuccessful()) {
+                return Resolution.hit(reqUrl, response.getBody());
+            }
+            if (response.isTransient()) {
+                definitiveMiss = false;
+            }
+        }
+        return Resolution.miss(definitiveMiss);
+    }
+
+    /**
+     * Requests every candidate at once but still answers in priority order: the result of
+     * candidate {@code i} is only used once all candidates before it have missed, and as soon as
+     * one hits, every lower-priority request still in flight is aborted.
+     */
+    private Resolution resolveConcurrently(List<String> urls, Cancellation cancellation, long deadline) {
+        List<HubCall> calls = new ArrayList<HubCall>(urls.size());
+        List<Future<HubResponse>> futures = new ArrayList<Future<HubResponse>>(urls.size());
+        try {
+            for (final String reqUrl : urls) {
+                final HubCall call = newCall(cancellation, deadline);
+                calls.add(call);
+                futures.add(resolverExecutor().submit(new Callable<HubResponse>() {
+                    @Override
+                    public HubResponse call() {
+                        return lookup(reqUrl, call);
+                    }
+                }));
+            }
+        } catch (RejectedExecutionException e) {
+            cancel(calls, futures);
+            return resolveSequentially(urls, cancellation, deadline);
+        }
+
+        boolean definitiveMiss = true;
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                HubResponse response;
+                try {
+                    response = futures.get(i).get();
+                } catch (ExecutionException e) {
+                    response = HubResponse.FAILED;
+                }
+                if (response.isSuccessful()) {
+                    return Resolution.hit(urls.get(i), response.getBody());
+                }
+                if (response.isTransient()) {
+                    definitiveMiss = false;
+                }
+            }
+            return Resolution.miss(definitiveMiss);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Resolution.miss(false);
+        } finally {
+            cancel(calls, futures);
+        }
+    }
+
+    private static HubCall newCall(Cancellation cancellation, long deadline) {
+        return cancellation == null ? new HubCall(deadline) : cancellation.newCall(deadline);
+    }
+
+    private static void cancel(List<HubCall> calls, List<Future<HubResponse>> futures) {
+        for (int i = 0; i < calls.size(); i++) {
+            if (i < futures.size() && futures.get(i).isDone()) {
+                continue;
+            }
+            calls.get(i).abort();
+            if (i < futures.size()) {
+                futures.get(i).cancel(true);
+            }
+        }
+    }
+
+    private static ExecutorService resolverExecutor() {
+        ExecutorService executor = resolverExecutor;
+        if (executor == null) {
+            synchronized (TVLikeDSL.class) {
+                executor = resolverExecutor;
+                if (executor == null) {
+                    ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                            RESOLVER_THREADS, RESOLVER_THREADS, 30, TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<Runnable>(RESOLVER_QUEUE_SIZE),
+                            new DaemonThreadFactory("tv-like-hub-"));
+                    pool.allowCoreThreadTimeOut(true);
+                    resolverExecutor = executor = pool;
+                }
+            }
+        }
+        return executor;
+    }
+
+    private static ExecutorService prefetchExecutor() {
+        ExecutorService executor = prefetchExecutor;
+        if (executor == null) {
+            synchronized (TVLikeDSL.class) {
+                executor = prefetchExecutor;
+                if (executor == null) {
+                    ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                            PREFETCH_THREADS, PREFETCH_THREADS, 30, TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<Runnable>(RESOLVER_QUEUE_SIZE),
+                            new DaemonThreadFactory("tv-like-prefetch-"));
+                    pool.allowCoreThreadTimeOut(true);
+                    prefetchExecutor = executor = pool;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * A single candidate lookup; successful results always carry a non-blank, trimmed DSL.
+     */
+    private HubResponse lookup(String reqUrl, HubCall call) {
+        if (cache != null) {
+            return getCached(reqUrl, call);
+        }
+        HubResponse response = HubClient.get(reqUrl, HubClient.TEXT_PLAIN, null, null, call);
+        if (!response.isSuccessful()) {
+            return response;
+        }
+        if (StringUtils.isBlank(response.getBody())) {
+            return NOT_FOUND;
+        }
+        return new HubResponse(response.getStatus(), response.getBody().trim(), response.getEtag(), response.getLastModified());
+    }
+
+    private static Set<String> candidates(String normalizedHost) {
         Set<String> candidates = new LinkedHashSet<String>();
         candidates.add(normalizedHost);
         if (normalizedHost.startsWith("www.")) {
@@ -71,79 +581,163 @@ public class TVLikeDSL {
                 candidates.add(domainPath.substring(0, domainPath.length() - "/www".length()));
             }
         }
-        for (String l : candidates) {
-            String reqUrl = tv_like_dsl_hub + l + ".dsl";
-            String s = get(reqUrl);
-            if (StringUtils.isNotBlank(s)) {
-                return s.trim();
-            }
+        return candidates;
+    }
+
+    /**
+     * Looks {@code reqUrl} up in the cache, going to the hub when the entry is missing or stale.
+     * A successful result always carries a non-blank, trimmed DSL as its body.
+     */
+    private HubResponse getCached(String reqUrl, HubCall call) {
+        DslCacheEntry entry = cache.get(reqUrl);
+        long now = System.currentTimeMillis();
+        if (entry != null && !entry.isExpired(now)) {
+            return cachedResponse(entry);
         }
-        return null;
+        if (entry != null && staleWhileRevalidate) {
+            refreshInBackground(reqUrl);
+            return cachedResponse(entry);
+        }
+        HubResponse response = entry == null
+                ? HubClient.get(reqUrl, HubClient.TEXT_PLAIN, null, null, call)
+                : HubClient.get(reqUrl, HubClient.TEXT_PLAIN, entry.getEtag(), entry.getLastModified(), call);
+        now = System.currentTimeMillis();
+        if (response.isNotModified() && entry != null) {
+            cache.put(entry.revalidated(now, now + cache.getTtlMillis()));
+            return cachedResponse(entry);
+        }
+        if (response.isSuccessful() && StringUtils.isNotBlank(response.getBody())) {
+            String dsl = response.getBody().trim();
+            cache.put(new DslCacheEntry(reqUrl, dsl, response.getEtag(), response.getLastModified(),
+                    now, now + cache.getTtlMillis()));
+            return new HubResponse(response.getStatus(), dsl, response.getEtag(), response.getLastModified());
+        }
+        if (response.isTransient() && entry != null) {
+            // Hub unreachable: an expired copy is still better than no rules at all.
+            return cachedResponse(entry);
+        }
+        if (entry != null) {
+            cache.remove(reqUrl);
+        }
+        return response.isSuccessful() ? NOT_FOUND : response;
     }
 
-    public static String get(String urlStr) {
-        if (StringUtils.isBlank(urlStr)) {
-            return "";
+    private void refreshInBackground(final String reqUrl) {
+        DslRefresher refresher = this.refresher;
+        if (refresher == null) {
+            this.refresher = refresher = DslRefresher.shared();
         }
-        HttpURLConnection conn = null;
-        try {
-            URL url = new URL(urlStr);
-            conn = (HttpURLConnection) url.openConnection();
+        refresher.schedule(reqUrl, new Runnable() {
+            @Override
+            public void run() {
+                refresh(reqUrl);
+            }
+        });
+    }
 
-            conn.setRequestMethod("GET");
-            conn.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
-            conn.setReadTimeout(READ_TIMEOUT_MILLIS);
-            conn.setRequestProperty("User-Agent", DEFAULT_USER_AGENT);
-            conn.setRequestProperty("Accept", "application/json");
+    /**
+     * Background half of stale-while-revalidate. A changed DSL is compiled into the shared
+     * {@link RuleSetCache} before its entry replaces the stale one, so pages switch from the old
+     * rule set to a ready new one in a single step; an unchanged DSL is only revalidated.
+     */
+    private void refresh(String reqUrl) {
+        DslCacheEntry entry = cache.get(reqUrl);
+        long now = System.currentTimeMillis();
+        if (entry == null || !entry.isExpired(now)) {
+            return;
+        }
+        HubResponse response = HubClient.get(reqUrl, HubClient.TEXT_PLAIN, entry.getEtag(),
+                entry.getLastModified(), HubCall.withTimeout(lookupTimeoutMillis));
+        now = System.currentTimeMillis();
+        if (response.isNotModified()) {
+            cache.put(entry.revalidated(now, now + cache.getTtlMillis()));
+        } else if (response.isSuccessful() && StringUtils.isNotBlank(response.getBody())) {
+            String dsl = response.getBody().trim();
+            if (!dsl.equals(entry.getDsl())) {
+                RuleSet ruleSet = RuleSetCache.shared().get(dsl);
+                if (ruleSet != null) {
+                    ruleSet.precompile();
+                }
+            }
+            cache.put(new DslCacheEntry(reqUrl, dsl, response.getEtag(), response.getLastModified(),
+                    now, now + cache.getTtlMillis()));
+        } else if (!response.isTransient()) {
+            // The hub no longer has it; the next lookup walks the candidates again.
+            cache.remove(reqUrl);
+        }
+    }
+
+    /**
+     * Identifies a host lookup that any instance may join: same hub and host, and the very same
+     * cache and pack, so a flight never hands back a DSL its joiner would not have resolved itself.
+     */
+    private static final class FlightKey {
+        private final String hub;
+        private final String host;
+        private final DslCache cache;
+        private final DslPack pack;
+
+        private FlightKey(String hub, String host, DslCache cache, DslPack pack) {
+            this.hub = hub;
+            this.host = host;
+            this.cache = cache;
+            this.pack = pack;
+        }
 
-            int code = conn.getResponseCode();
-            if (code >= 200 && code < 300) {
-                return readResponseBody(conn);
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
             }
-        } catch (Exception e) {
-            return "";
-        } finally {
-            if (conn != null) {
-                conn.disconnect();
+            if (!(o instanceof FlightKey)) {
+                return false;
             }
+            FlightKey other = (FlightKey) o;
+            return hub.equals(other.hub) && host.equals(other.host) && cache == other.cache && pack == other.pack;
         }
-        return "";
-    }
 
-    public static String postJson(String urlStr, String jsonBody) {
-        if (StringUtils.isBlank(urlStr)) {
-            return "";
+        @Override
+        public int hashCode() {
+            int result = hub.hashCode();
+            result = 31 * result + host.hashCode();
+            result = 31 * result + System.identityHashCode(cache);
+            return 31 * result + System.identityHashCode(pack);
         }
-        HttpURLConnection conn = null;
-        try {
-            URL url = new URL(urlStr);
-            conn = (HttpURLConnection) url.openConnection();
+    }
 
-            conn.setRequestMethod("POST");
-            conn.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
-            conn.setReadTimeout(READ_TIMEOUT_MILLIS);
-            conn.setDoOutput(true);
-            conn.setRequestProperty("Content-Type", "application/json; charset=utf-8");
-            conn.setRequestProperty("User-Agent", DEFAULT_USER_AGENT);
-            conn.setRequestProperty("Accept", "application/json");
+    private static final class Resolution {
+        private final String url;
+        private final String dsl;
+        private final boolean definitiveMiss;
 
-            try (OutputStream os = conn.getOutputStream()) {
-                byte[] input = (jsonBody == null ? "" : jsonBody).getBytes(StandardCharsets.UTF_8);
-                os.write(input, 0, input.length);
-            }
+        private Resolution(String url, String dsl, boolean definitiveMiss) {
+            this.url = url;
+            this.dsl = dsl;
+            this.definitiveMiss = definitiveMiss;
+        }
 
-            int code = conn.getResponseCode();
-            if (code >= 200 && code < 300) {
-                return readResponseBody(conn);
-            }
-        } catch (Exception e) {
-            return "";
-        } finally {
-            if (conn != null) {
-                conn.disconnect();
-            }
+        static Resolution hit(String url, String dsl) {
+            return new Resolution(url, dsl, false);
+        }
+
+        static Resolution miss(boolean definitiveMiss) {
+            return new Resolution(null, null, definitiveMiss);
         }
-        return "";
+    }
+
+    private static HubResponse cachedResponse(DslCacheEntry entry) {
+        return new HubResponse(200, entry.getDsl(), entry.getEtag(), entry.getLastModified());
+    }
+
+    public static String get(String urlStr) {
+        HubResponse response = HubClient.get(urlStr, HubClient.JSON, null, null,
+                HubCall.withTimeout(REQUEST_TIMEOUT_MILLIS));
+        return response.isSuccessful() ? response.getBody() : "";
+    }
+
+    public static String postJson(String urlStr, String jsonBody) {
+        HubResponse response = HubClient.postJson(urlStr, jsonBody, HubCall.withTimeout(REQUEST_TIMEOUT_MILLIS));
+        return response.isSuccessful() ? response.getBody() : "";
     }
 
     public static String domainToDslPath(String host) {
@@ -181,27 +775,4 @@ public class TVLikeDSL {
         }
         return normalizedHost;
     }
-
-    private static String readResponseBody(HttpURLConnection conn) throws IOException {
-        if (conn == null) {
-            return "";
-        }
-        InputStreamReader reader = null;
-        if (conn.getResponseCode() >= 200 && conn.getResponseCode() < 300) {
-            reader = new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8);
-        } else if (conn.getErrorStream() != null) {
-            reader = new InputStreamReader(conn.getErrorStream(), StandardCharsets.UTF_8);
-        }
-        if (reader == null) {
-            return "";
-        }
-        try (BufferedReader br = new BufferedReader(reader)) {
-            StringBuilder sb = new StringBuilder();
-            String line;
-            while ((line = br.readLine()) != null) {
-                sb.append(line).append("\n");
-            }
-            return sb.toString();
-        }
-    }
 }
@@ -1,11 +1,22 @@
 package tv.tvai.like.enums;
 
+import java.util.HashMap;
+import java.util.Map;
+
 public enum OptionKeyEnum {
     ATTR("attr", true),
     LIMIT("limit", true),
     TRANSFORM("transform", true),
     IMG_RATIO("img-ratio");
 
+    private static final Map<String, OptionKeyEnum> BY_KEY = new HashMap<>();
+
+    static {
+        for (OptionKeyEnum value : values()) {
+            BY_KEY.put(value.key, value);
+        }
+    }
+
     private final String key;
     private final boolean executable;
 
@@ -27,12 +38,12 @@ public enum OptionKeyEnum {
         return executable;
     }
 
+    public static OptionKeyEnum fromKey(String key) {
+        return key == null ? null : BY_KEY.get(key);
+    }
+
     public static boolean executable(String key) {
-        for (OptionKeyEnum value : values()) {
-            if (value.key.equals(key)) {
-                return value.executable;
-            }
-        }
-        return false;
+        OptionKeyEnum value = fromKey(key);
+        return value != null && value.executable;
     }
 }
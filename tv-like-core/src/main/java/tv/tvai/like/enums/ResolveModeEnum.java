@@ -0,0 +1,15 @@
+package tv.tvai.like.enums;
+
+/**
+ * How {@code TVLikeDSL} walks the hub candidate urls of a host.
+ */
+public enum ResolveModeEnum {
+    /**
+     * One candidate at a time, in priority order.
+     */
+    SEQUENTIAL,
+    /**
+     * All candidates at once; the highest-priority hit wins and slower requests are cancelled.
+     */
+    CONCURRENT
+}
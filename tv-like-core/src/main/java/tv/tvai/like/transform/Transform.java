@@ -0,0 +1,17 @@
+package tv.tvai.like.transform;
+
+import org.jsoup.nodes.Element;
+
+/**
+ * One compiled step of a field's {@code transform} chain.
+ */
+public interface Transform {
+
+    /**
+     * @param value  the current value, never {@code null}
+     * @param target the element the value was read from
+     * @param attr   the attribute the value was read from, or {@code null} for element text
+     * @return the transformed value, or {@code null} to drop the field
+     */
+    String apply(String value, Element target, String attr);
+}
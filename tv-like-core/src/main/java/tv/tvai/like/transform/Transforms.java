@@ -0,0 +1,386 @@
+package tv.tvai.like.transform;
+
+import org.jsoup.nodes.Element;
+import tv.tvai.like.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Compiles {@code transform} option values such as {@code trim|regex-extract('(\d+)')|number}
+ * into {@link Transform} chains. Steps are separated by {@code |}; arguments go in parentheses,
+ * separated by commas and optionally quoted. Unknown step names are ignored, as they always
+ * were. {@link #compile(String)} rejects malformed steps; {@link #compileLenient(String)} skips
+ * them like unknown ones, which is what extraction uses.
+ * <p>
+ * Supported steps: {@code trim}, {@code lower}/{@code lower-case}, {@code upper}/{@code upper-case},
+ * {@code digits}, {@code abs-url}, {@code collapse-ws}, {@code number},
+ * {@code regex-extract(pattern[, group])}, {@code replace(target, replacement)},
+ * {@code substring-before(separator)} and {@code substring-after(separator)}.
+ */
+public final class Transforms {
+
+    private static final Transform[] NONE = new Transform[0];
+
+    private static final Pattern NUMBER_PATTERN = Pattern.compile("[-+]?\\d+(?:\\.\\d+)?");
+
+    private static final Map<String, Transform> SIMPLE = new HashMap<>();
+
+    static {
+        SIMPLE.put("trim", new Transform() {
+            @Override
+            public String apply(String value, Element target, String attr) {
+                return value.trim();
+            }
+        });
+        Transform lower = new Transform() {
+            @Override
+            public String apply(String value, Element target, String attr) {
+                return lowerCase(value);
+            }
+        };
+        SIMPLE.put("lower", lower);
+        SIMPLE.put("lower-case", lower);
+        Transform upper = new Transform() {
+            @Override
+            public String apply(String value, Element target, String attr) {
+                return upperCase(value);
+            }
+        };
+        SIMPLE.put("upper", upper);
+        SIMPLE.put("upper-case", upper);
+        SIMPLE.put("digits", new Transform() {
+            @Override
+            public String apply(String value, Element target, String attr) {
+                return digits(value);
+            }
+        });
+        SIMPLE.put("abs-url", new Transform() {
+            @Override
+            public String apply(String value, Element target, String attr) {
+                if (target == null || StringUtils.isBlank(attr)) {
+                    return value;
+                }
+                String absUrl = target.absUrl(attr);
+                return StringUtils.isNotBlank(absUrl) ? absUrl.trim() : value;
+            }
+        });
+        SIMPLE.put("collapse-ws", new Transform() {
+            @Override
+            public String apply(String value, Element target, String attr) {
+                return collapseWhitespace(value);
+            }
+        });
+        SIMPLE.put("number", new RegexExtract(NUMBER_PATTERN, 0));
+    }
+
+    private Transforms() {
+    }
+
+    /**
+     * @throws IllegalArgumentException when a step is malformed or has missing or invalid arguments
+     */
+    public static Transform[] compile(String spec) {
+        return compile(spec, true);
+    }
+
+    /**
+     * Like {@link #compile(String)}, but a malformed step is skipped instead of failing the chain.
+     */
+    public static Transform[] compileLenient(String spec) {
+        return compile(spec, false);
+    }
+
+    private static Transform[] compile(String spec, boolean strict) {
+        if (StringUtils.isBlank(spec)) {
+            return NONE;
+        }
+        List<Transform> chain = new ArrayList<>();
+        for (String step : split(spec, '|')) {
+            if (StringUtils.isNotBlank(step)) {
+                addStep(chain, step.trim(), strict);
+            }
+        }
+        return chain.toArray(NONE);
+    }
+
+    private static void addStep(List<Transform> chain, String step, boolean strict) {
+        Transform transform;
+        try {
+            transform = compileStep(step);
+        } catch (IllegalArgumentException e) {
+            if (strict) {
+                throw e;
+            }
+            // An unbalanced quote or parenthesis swallows the steps after it; try those on their own.
+            if (step.indexOf('|') >= 0) {
+                for (String part : step.split("\\|")) {
+                    if (StringUtils.isNotBlank(part)) {
+                        addStep(chain, part.trim(), false);
+                    }
+                }
+            }
+            return;
+        }
+        if (transform != null) {
+            chain.add(transform);
+        }
+    }
+
+    /**
+     * Runs {@code chain} over {@code value}; {@code null} as soon as any step drops the value.
+     */
+    public static String apply(Transform[] chain, String value, Element target, String attr) {
+        String transformed = value;
+        for (Transform transform : chain) {
+            if (transformed == null) {
+                return null;
+            }
+            transformed = transform.apply(transformed, target, attr);
+        }
+        return transformed;
+    }
+
+    private static Transform compileStep(String step) {
+        int open = step.indexOf('(');
+        if (open < 0) {
+            return SIMPLE.get(step.toLowerCase(Locale.ROOT));
+        }
+        if (!step.endsWith(")")) {
+            throw new IllegalArgumentException("Unterminated arguments in transform: " + step);
+        }
+        String name = step.substring(0, open).trim().toLowerCase(Locale.ROOT);
+        List<String> args = new ArrayList<>();
+        for (String arg : split(step.substring(open + 1, step.length() - 1), ',')) {
+            args.add(unquote(arg.trim()));
+        }
+        switch (name) {
+            case "regex-extract":
+                requireArgs(step, args, 1, 2);
+                return new RegexExtract(compilePattern(step, args.get(0)), args.size() > 1 ? parseGroup(step, args.get(1)) : -1);
+            case "replace":
+                requireArgs(step, args, 2, 2);
+                if (args.get(0).isEmpty()) {
+                    throw new IllegalArgumentException("replace needs a non-empty target: " + step);
+                }
+                return new Replace(args.get(0), args.get(1));
+            case "substring-before":
+                requireArgs(step, args, 1, 1);
+                return new Substring(args.get(0), true);
+            case "substring-after":
+                requireArgs(step, args, 1, 1);
+                return new Substring(args.get(0), false);
+            default:
+                return SIMPLE.get(name);
+        }
+    }
+
+    private static void requireArgs(String step, List<String> args, int min, int max) {
+        if (args.size() < min || args.size() > max) {
+            throw new IllegalArgumentException("Wrong number of arguments in transform: " + step);
+        }
+    }
+
+    private static Pattern compilePattern(String step, String regex) {
+        try {
+            return Pattern.compile(regex);
+        } catch (PatternSyntaxException e) {
+            throw new IllegalArgumentException("Invalid pattern in transform: " + step, e);
+        }
+    }
+
+    private static int parseGroup(String step, String group) {
+        try {
+            return Integer.parseInt(group);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid group in transform: " + step, e);
+        }
+    }
+
+    /**
+     * Splits on {@code separator} outside quotes and parentheses.
+     */
+    static List<String> split(String text, char separator) {
+        List<String> parts = new ArrayList<>();
+        int depth = 0;
+        char quote = 0;
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quote != 0) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == separator && depth == 0) {
+                parts.add(text.substring(start, i));
+                start = i + 1;
+            }
+        }
+        parts.add(text.substring(start));
+        return parts;
+    }
+
+    private static String unquote(String arg) {
+        if (arg.length() >= 2) {
+            char first = arg.charAt(0);
+            char last = arg.charAt(arg.length() - 1);
+            if ((first == '"' || first == '\'') && last == first) {
+                String inner = arg.substring(1, arg.length() - 1);
+                return inner.indexOf('\\') < 0 ? inner : inner.replace("\\" + first, String.valueOf(first));
+            }
+        }
+        return arg;
+    }
+
+    static String lowerCase(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (Character.toLowerCase(c) != c) {
+                return value.toLowerCase(Locale.ROOT);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Only plain ASCII without lower-case letters is returned as is: outside ASCII a character can
+     * be its own upper case and still expand, as the German sharp s becomes {@code SS}.
+     */
+    static String upperCase(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80 || (c >= 'a' && c <= 'z')) {
+                return value.toUpperCase(Locale.ROOT);
+            }
+        }
+        return value;
+    }
+
+    static String digits(String value) {
+        int count = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= '0' && c <= '9') {
+                count++;
+            }
+        }
+        if (count == 0) {
+            return null;
+        }
+        if (count == value.length()) {
+            return value;
+        }
+        char[] out = new char[count];
+        int n = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= '0' && c <= '9') {
+                out[n++] = c;
+            }
+        }
+        return new String(out);
+    }
+
+    static String collapseWhitespace(String value) {
+        int len = value.length();
+        boolean clean = len == 0 || (!Character.isWhitespace(value.charAt(0)) && !Character.isWhitespace(value.charAt(len - 1)));
+        for (int i = 0; clean && i < len; i++) {
+            char c = value.charAt(i);
+            if (Character.isWhitespace(c) && (c != ' ' || Character.isWhitespace(value.charAt(i + 1)))) {
+                clean = false;
+            }
+        }
+        if (clean) {
+            return value;
+        }
+        StringBuilder sb = new StringBuilder(len);
+        boolean pendingSpace = false;
+        for (int i = 0; i < len; i++) {
+            char c = value.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = sb.length() > 0;
+            } else {
+                if (pendingSpace) {
+                    sb.append(' ');
+                    pendingSpace = false;
+                }
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static final class RegexExtract implements Transform {
+        private final Pattern pattern;
+        private final int group;
+
+        /**
+         * @param group capture group to return; negative means group 1 if the pattern has one, else the whole match
+         */
+        private RegexExtract(Pattern pattern, int group) {
+            int groups = pattern.matcher("").groupCount();
+            if (group > groups) {
+                throw new IllegalArgumentException("Pattern " + pattern + " has no group " + group);
+            }
+            this.pattern = pattern;
+            this.group = group < 0 ? Math.min(groups, 1) : group;
+        }
+
+        @Override
+        public String apply(String value, Element target, String attr) {
+            Matcher matcher = pattern.matcher(value);
+            return matcher.find() ? matcher.group(group) : null;
+        }
+    }
+
+    private static final class Replace implements Transform {
+        private final String target;
+        private final String replacement;
+
+        private Replace(String target, String replacement) {
+            this.target = target;
+            this.replacement = replacement;
+        }
+
+        @Override
+        public String apply(String value, Element element, String attr) {
+            return value.indexOf(target) < 0 ? value : value.replace(target, replacement);
+        }
+    }
+
+    /**
+     * XPath-style {@code substring-before}/{@code substring-after}: empty when the separator is absent.
+     */
+    private static final class Substring implements Transform {
+        private final String separator;
+        private final boolean before;
+
+        private Substring(String separator, boolean before) {
+            this.separator = separator;
+            this.before = before;
+        }
+
+        @Override
+        public String apply(String value, Element target, String attr) {
+            int index = value.indexOf(separator);
+            if (index < 0) {
+                return "";
+            }
+            return before ? value.substring(0, index) : value.substring(index + separator.length());
+        }
+    }
+}
@@ -0,0 +1,392 @@
+package tv.tvai.like.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An Ant-style path pattern compiled once for repeated matching. {@link #matches(String)} gives
+ * the same answer as {@link AntPathMatcher#match(String, String)} with the default settings
+ * ({@code /} separator, case-sensitive, untrimmed tokens), but works on the path string in place:
+ * no tokenizing, no {@link Matcher} and no allocation, unless a segment uses a
+ * {@code {name:regex}} template, which still goes through {@link Pattern}.
+ * <p>
+ * Like the regular expressions {@link AntPathMatcher} builds, {@code ?}, {@code *} and
+ * {@code {name}} never match line terminators.
+ */
+public final class CompiledPathPattern {
+
+    private static final char SEPARATOR = '/';
+
+    /**
+     * Same tokenizer {@link AntPathMatcher.AntPathStringMatcher} uses to find wildcards and templates.
+     */
+    private static final Pattern GLOB_PATTERN = Pattern.compile("\\?|\\*|\\{((?:\\{[^/]+?}|[^/{}]|\\\\[{}])+?)}");
+
+    private static final char[] WILDCARD_CHARS = {'*', '?', '{'};
+
+    private final String pattern;
+    private final String[] tokens;
+    private final Segment[] segments;
+    private final boolean startsWithSeparator;
+    private final boolean endsWithSeparator;
+
+    private CompiledPathPattern(String pattern) {
+        this.pattern = pattern;
+        this.tokens = StringUtils.tokenizeToStringArray(pattern, String.valueOf(SEPARATOR), false, true);
+        this.segments = new Segment[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            segments[i] = Segment.compile(tokens[i]);
+        }
+        this.startsWithSeparator = pattern.length() > 0 && pattern.charAt(0) == SEPARATOR;
+        this.endsWithSeparator = pattern.length() > 0 && pattern.charAt(pattern.length() - 1) == SEPARATOR;
+    }
+
+    /**
+     * @throws java.util.regex.PatternSyntaxException if a {@code {name:regex}} template is not a valid regex
+     */
+    public static CompiledPathPattern compile(String pattern) {
+        if (pattern == null) {
+            throw new IllegalArgumentException("pattern must not be null");
+        }
+        return new CompiledPathPattern(pattern);
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    /**
+     * Mirrors {@code AntPathMatcher.doMatch} for a full match, with segment cursors over
+     * {@code path} instead of a token array: {@code start} moves forward over matched leading
+     * segments and {@code end} backward over matched trailing ones.
+     */
+    public boolean matches(String path) {
+        if (path == null || startsWith(path) != startsWithSeparator) {
+            return false;
+        }
+        if (!isPotentialMatch(path)) {
+            return false;
+        }
+        int pattStart = 0;
+        int pattEnd = segments.length - 1;
+        int start = 0;
+        int end = path.length();
+
+        while (pattStart <= pattEnd) {
+            int segStart = nextSegmentStart(path, start, end);
+            if (segStart < 0 || segments[pattStart].doubleWildcard) {
+                break;
+            }
+            int segEnd = segmentEnd(path, segStart, end);
+            if (!segments[pattStart].matches(path, segStart, segEnd)) {
+                return false;
+            }
+            pattStart++;
+            start = segEnd;
+        }
+
+        if (nextSegmentStart(path, start, end) < 0) {
+            if (pattStart > pattEnd) {
+                return endsWithSeparator == endsWith(path);
+            }
+            if (pattStart == pattEnd && "*".equals(tokens[pattStart]) && endsWith(path)) {
+                return true;
+            }
+            return onlyDoubleWildcards(pattStart, pattEnd);
+        }
+        if (pattStart > pattEnd) {
+            return false;
+        }
+
+        while (pattStart <= pattEnd) {
+            int segEnd = previousSegmentEnd(path, start, end);
+            if (segEnd < 0 || segments[pattEnd].doubleWildcard) {
+                break;
+            }
+            int segStart = segmentStart(path, start, segEnd);
+            if (!segments[pattEnd].matches(path, segStart, segEnd)) {
+                return false;
+            }
+            pattEnd--;
+            end = segStart;
+        }
+        if (nextSegmentStart(path, start, end) < 0) {
+            return onlyDoubleWildcards(pattStart, pattEnd);
+        }
+
+        while (pattStart != pattEnd && nextSegmentStart(path, start, end) >= 0) {
+            int next = pattStart + 1;
+            while (!segments[next].doubleWildcard) {
+                next++;
+            }
+            if (next == pattStart + 1) {
+                pattStart++;
+                continue;
+            }
+            int found = findRun(path, start, end, pattStart + 1, next);
+            if (found < 0) {
+                return false;
+            }
+            pattStart = next;
+            start = found;
+        }
+
+        return onlyDoubleWildcards(pattStart, pattEnd);
+    }
+
+    /**
+     * Finds the first run of consecutive path segments in {@code [from, to)} matched by
+     * {@code segments[first..last)}.
+     *
+     * @return the end of the run, or -1
+     */
+    private int findRun(String path, int from, int to, int first, int last) {
+        int candidate = nextSegmentStart(path, from, to);
+        while (candidate >= 0) {
+            int pos = candidate;
+            int i = first;
+            while (i < last) {
+                int segStart = nextSegmentStart(path, pos, to);
+                if (segStart < 0) {
+                    return -1;
+                }
+                int segEnd = segmentEnd(path, segStart, to);
+                if (!segments[i].matches(path, segStart, segEnd)) {
+                    break;
+                }
+                pos = segEnd;
+                i++;
+            }
+            if (i == last) {
+                return pos;
+            }
+            candidate = nextSegmentStart(path, segmentEnd(path, candidate, to), to);
+        }
+        return -1;
+    }
+
+    private boolean onlyDoubleWildcards(int from, int to) {
+        for (int i = from; i <= to; i++) {
+            if (!segments[i].doubleWildcard) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * {@code AntPathMatcher.isPotentialMatch}, kept verbatim in behaviour since it can reject
+     * paths the segment walk alone would accept.
+     */
+    private boolean isPotentialMatch(String path) {
+        int pos = 0;
+        for (String token : tokens) {
+            while (pos < path.length() && path.charAt(pos) == SEPARATOR) {
+                pos++;
+            }
+            int skipped = skipSegment(path, pos, token);
+            if (skipped < token.length()) {
+                return skipped > 0 || (token.length() > 0 && isWildcardChar(token.charAt(0)));
+            }
+            pos += skipped;
+        }
+        return true;
+    }
+
+    private static int skipSegment(String path, int pos, String prefix) {
+        int skipped = 0;
+        for (int i = 0; i < prefix.length(); i++) {
+            char c = prefix.charAt(i);
+            if (isWildcardChar(c)) {
+                return skipped;
+            }
+            int currPos = pos + skipped;
+            if (currPos >= path.length()) {
+                return 0;
+            }
+            if (c == path.charAt(currPos)) {
+                skipped++;
+            }
+        }
+        return skipped;
+    }
+
+    private static boolean isWildcardChar(char c) {
+        for (char candidate : WILDCARD_CHARS) {
+            if (c == candidate) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean startsWith(String path) {
+        return path.length() > 0 && path.charAt(0) == SEPARATOR;
+    }
+
+    private static boolean endsWith(String path) {
+        return path.length() > 0 && path.charAt(path.length() - 1) == SEPARATOR;
+    }
+
+    private static int nextSegmentStart(String path, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (path.charAt(i) != SEPARATOR) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int segmentEnd(String path, int segStart, int to) {
+        int i = segStart;
+        while (i < to && path.charAt(i) != SEPARATOR) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int previousSegmentEnd(String path, int from, int to) {
+        for (int i = to; i > from; i--) {
+            if (path.charAt(i - 1) != SEPARATOR) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int segmentStart(String path, int from, int segEnd) {
+        int i = segEnd;
+        while (i > from && path.charAt(i - 1) != SEPARATOR) {
+            i--;
+        }
+        return i;
+    }
+
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    /**
+     * One pattern token: {@code **}, or a sequence of literals, {@code ?} and {@code *}
+     * ({@code {name}} being a {@code *}), or a regex when a {@code {name:regex}} template is used.
+     */
+    private static final class Segment {
+        private static final byte LITERAL = 0;
+        private static final byte ANY_CHAR = 1;
+        private static final byte ANY_RUN = 2;
+
+        final boolean doubleWildcard;
+        private final byte[] kinds;
+        private final String[] literals;
+        private final Pattern regex;
+
+        private Segment(boolean doubleWildcard, byte[] kinds, String[] literals, Pattern regex) {
+            this.doubleWildcard = doubleWildcard;
+            this.kinds = kinds;
+            this.literals = literals;
+            this.regex = regex;
+        }
+
+        static Segment compile(String token) {
+            if ("**".equals(token)) {
+                return new Segment(true, new byte[0], new String[0], null);
+            }
+            List<Byte> kinds = new ArrayList<Byte>();
+            List<String> literals = new ArrayList<String>();
+            StringBuilder regex = new StringBuilder();
+            boolean needsRegex = false;
+            Matcher matcher = GLOB_PATTERN.matcher(token);
+            int end = 0;
+            while (matcher.find()) {
+                if (matcher.start() > end) {
+                    String literal = token.substring(end, matcher.start());
+                    kinds.add(LITERAL);
+                    literals.add(literal);
+                    regex.append(Pattern.quote(literal));
+                }
+                String match = matcher.group();
+                if ("?".equals(match)) {
+                    kinds.add(ANY_CHAR);
+                    literals.add(null);
+                    regex.append('.');
+                } else if ("*".equals(match)) {
+                    addAnyRun(kinds, literals);
+                    regex.append(".*");
+                } else {
+                    int colonIdx = match.indexOf(':');
+                    if (colonIdx == -1) {
+                        addAnyRun(kinds, literals);
+                        regex.append("(.*)");
+                    } else {
+                        needsRegex = true;
+                        regex.append('(').append(match, colonIdx + 1, match.length() - 1).append(')');
+                    }
+                }
+                end = matcher.end();
+            }
+            if (end < token.length()) {
+                String literal = token.substring(end);
+                kinds.add(LITERAL);
+                literals.add(literal);
+                regex.append(Pattern.quote(literal));
+            }
+            if (needsRegex) {
+                return new Segment(false, null, null, Pattern.compile(regex.toString()));
+            }
+            byte[] kindArray = new byte[kinds.size()];
+            for (int i = 0; i < kindArray.length; i++) {
+                kindArray[i] = kinds.get(i);
+            }
+            return new Segment(false, kindArray, literals.toArray(new String[0]), null);
+        }
+
+        private static void addAnyRun(List<Byte> kinds, List<String> literals) {
+            // "**" inside a token or "*{id}" behave like a single "*".
+            if (!kinds.isEmpty() && kinds.get(kinds.size() - 1) == ANY_RUN) {
+                return;
+            }
+            kinds.add(ANY_RUN);
+            literals.add(null);
+        }
+
+        boolean matches(String path, int start, int end) {
+            if (regex != null) {
+                return regex.matcher(path.substring(start, end)).matches();
+            }
+            return matchFrom(0, path, start, end);
+        }
+
+        private boolean matchFrom(int part, String path, int pos, int end) {
+            for (int p = part; p < kinds.length; p++) {
+                switch (kinds[p]) {
+                    case LITERAL:
+                        String literal = literals[p];
+                        if (end - pos < literal.length() || !path.regionMatches(pos, literal, 0, literal.length())) {
+                            return false;
+                        }
+                        pos += literal.length();
+                        break;
+                    case ANY_CHAR:
+                        if (pos >= end || isLineTerminator(path.charAt(pos))) {
+                            return false;
+                        }
+                        pos++;
+                        break;
+                    default:
+                        // Try every run length the star can take, shortest first; it stops at line terminators.
+                        for (int next = pos; ; next++) {
+                            if (matchFrom(p + 1, path, next, end)) {
+                                return true;
+                            }
+                            if (next >= end || isLineTerminator(path.charAt(next))) {
+                                return false;
+                            }
+                        }
+                }
+            }
+            return pos == end;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package tv.tvai.like.util;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Names pool threads and marks them as daemons so library executors never keep a JVM alive.
+ */
+public class DaemonThreadFactory implements ThreadFactory {
+
+    private final String prefix;
+
+    private final AtomicInteger counter = new AtomicInteger();
+
+    public DaemonThreadFactory(String prefix) {
+        this.prefix = prefix;
+    }
+
+    @Override
+    public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, prefix + counter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+}
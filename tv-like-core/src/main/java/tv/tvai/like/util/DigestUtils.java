@@ -0,0 +1,26 @@
+package tv.tvai.like.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+public abstract class DigestUtils {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    public static String sha256Hex(String text) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        byte[] hash = digest.digest((text == null ? "" : text).getBytes(StandardCharsets.UTF_8));
+        char[] out = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            out[i * 2] = HEX[(hash[i] >> 4) & 0x0f];
+            out[i * 2 + 1] = HEX[hash[i] & 0x0f];
+        }
+        return new String(out);
+    }
+}
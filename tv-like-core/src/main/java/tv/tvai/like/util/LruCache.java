@@ -0,0 +1,75 @@
+package tv.tvai.like.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Small thread-safe LRU map. Every access goes through a single lock, which is fine for the
+ * few hundred entries the caches in this library hold.
+ */
+public class LruCache<K, V> {
+
+    private final int maxSize;
+
+    private final LinkedHashMap<K, V> map;
+
+    private long evictionCount;
+
+    public LruCache(final int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.map = new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                if (size() > LruCache.this.maxSize) {
+                    evictionCount++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public synchronized V get(K key) {
+        return map.get(key);
+    }
+
+    public synchronized V put(K key, V value) {
+        return map.put(key, value);
+    }
+
+    /**
+     * Stores {@code value} unless another thread got there first, and returns the value that
+     * ends up cached.
+     */
+    public synchronized V putIfAbsent(K key, V value) {
+        V existing = map.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        map.put(key, value);
+        return value;
+    }
+
+    public synchronized V remove(K key) {
+        return map.remove(key);
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public int maxSize() {
+        return maxSize;
+    }
+
+    public synchronized long evictionCount() {
+        return evictionCount;
+    }
+
+    public synchronized void clear() {
+        map.clear();
+    }
+}
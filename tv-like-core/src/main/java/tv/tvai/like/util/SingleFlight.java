@@ -0,0 +1,47 @@
+package tv.tvai.like.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Coalesces concurrent calls for the same key: the first caller runs the task on its own thread,
+ * and callers arriving while it runs wait for and share its result or failure instead of running
+ * the task again. Nothing is remembered once a call completes; caching results is up to the task.
+ */
+public final class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, FutureTask<V>> flights = new ConcurrentHashMap<K, FutureTask<V>>();
+
+    /**
+     * @param timeout how long to wait for a call that another thread started; the caller that
+     *                runs {@code task} itself is not bounded by it
+     * @throws ExecutionException if the task threw, wrapping what it threw
+     * @throws TimeoutException   if another thread's call did not finish within {@code timeout}
+     */
+    public V execute(K key, Callable<V> task, long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        FutureTask<V> created = new FutureTask<V>(task);
+        FutureTask<V> running = flights.putIfAbsent(key, created);
+        if (running != null) {
+            return running.get(timeout, unit);
+        }
+        try {
+            created.run();
+        } finally {
+            flights.remove(key, created);
+        }
+        return created.get();
+    }
+
+    /**
+     * Number of calls currently running.
+     */
+    public int size() {
+        return flights.size();
+    }
+}
@@ -0,0 +1,64 @@
+package tv.tvai.like;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class AncestorFilterTest {
+
+    private static final String[] SELECTORS = {
+            "div.public-list-box .public-list-exp",
+            ".box-width > div .public-list-prb",
+            "BODY.Theme2 .swiper-slide a",
+            "ul.swiper-wrapper > li + li",
+            "#missing .public-list-box",
+            ".head-nav a, .no-such-parent img",
+            "div:has(img) .public-bg",
+    };
+
+    @Test
+    public void shouldNeverRejectARealMatch() throws IOException {
+        Document doc = Jsoup.parse(new File("../test/html/mtyy1_com_index.html"), "UTF-8", "https://mtyy1.com/");
+        List<RuleNode> rules = new ArrayList<>();
+        for (String selector : SELECTORS) {
+            RuleNode rule = new RuleNode(selector, selector);
+            Assert.assertTrue(selector, rule.compile());
+            rules.add(rule);
+        }
+        RuleIndex index = RuleIndex.build(rules);
+        Assert.assertTrue(index.usesAncestorFilter());
+
+        AncestorFilter filter = new AncestorFilter();
+        filter.pushAncestorsOf(doc.body());
+        int[] counts = new int[2];
+        walk(doc.body(), rules, index, filter, counts);
+
+        Assert.assertTrue("matches", counts[0] > 0);
+        Assert.assertTrue("rejections", counts[1] > 0);
+    }
+
+    private static void walk(Element el, List<RuleNode> rules, RuleIndex index, AncestorFilter filter, int[] counts) {
+        for (int i = 0; i < rules.size(); i++) {
+            boolean matches = el.is(rules.get(i).getEvaluator());
+            boolean mayMatch = index.mayMatchUnder(i, filter);
+            if (matches) {
+                Assert.assertTrue(rules.get(i).getSelector() + " at " + el.cssSelector(), mayMatch);
+                counts[0]++;
+            } else if (!mayMatch) {
+                counts[1]++;
+            }
+        }
+        filter.push(el);
+        for (Element child : el.children()) {
+            walk(child, rules, index, filter, counts);
+        }
+        filter.pop(el);
+    }
+}
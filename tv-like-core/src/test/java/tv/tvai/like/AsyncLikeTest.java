@@ -0,0 +1,79 @@
+package tv.tvai.like;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class AsyncLikeTest {
+
+    @Test
+    public void shouldMatchSynchronousResult() throws Exception {
+        String html = "<ul class='list'><li><a href='/a1'>one</a></li><li><a href='/a2'>two</a></li></ul>"
+                + "<script type='text/plain' name='tv-like'>section:list .list {\nitems: li {\ntext: a\n}\n}</script>";
+        TV tv = new TV(html, "https://example.com/list");
+
+        List<Map<String, Object>> async = tv.likeAsync().get(5, TimeUnit.SECONDS);
+
+        Assert.assertEquals(tv.like(), async);
+        Assert.assertEquals(1, async.size());
+    }
+
+    @Test
+    public void shouldHandResultToCallback() throws Exception {
+        String html = "<div class='card'><a href='/a1'>one</a></div>"
+                + "<script type='text/plain' name='tv-like'>section:card .card {\ntext: a\n}</script>";
+        TV tv = new TV(html, "https://example.com/");
+        final List<List<Map<String, Object>>> received = new ArrayList<>();
+        final CountDownLatch called = new CountDownLatch(1);
+
+        Future<List<Map<String, Object>>> future = tv.likeAsync(new TV.Callback() {
+            @Override
+            public void onResult(List<Map<String, Object>> result) {
+                received.add(result);
+                called.countDown();
+            }
+        });
+
+        Assert.assertTrue(called.await(5, TimeUnit.SECONDS));
+        Assert.assertSame(future.get(), received.get(0));
+        Assert.assertEquals(tv.like(), received.get(0));
+    }
+
+    @Test
+    public void shouldAbortHubRequestWhenCancelled() throws Exception {
+        try (StubHub hub = new StubHub().delay("/slow.example.dsl", 10_000)) {
+            ExecutorService io = Executors.newSingleThreadExecutor();
+            try {
+                Future<List<Map<String, Object>>> future =
+                        new TV("<p>no inline dsl</p>", "https://slow.example/", hub.url()).likeAsync(io, null, null);
+                long deadline = System.currentTimeMillis() + 5_000;
+                while (hub.count("/slow.example.dsl") == 0 && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(10);
+                }
+                Assert.assertEquals(1, hub.count("/slow.example.dsl"));
+
+                Assert.assertTrue(future.cancel(true));
+
+                // The only I/O thread is free again long before the hub would have answered.
+                Future<?> marker = io.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                    }
+                });
+                marker.get(2, TimeUnit.SECONDS);
+                Assert.assertTrue(future.isCancelled());
+                Assert.assertEquals(0, hub.count("/example/slow.dsl"));
+            } finally {
+                io.shutdownNow();
+            }
+        }
+    }
+}
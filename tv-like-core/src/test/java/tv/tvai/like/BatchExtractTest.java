@@ -0,0 +1,52 @@
+package tv.tvai.like;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class BatchExtractTest {
+
+    @Test
+    public void shouldKeepInputOrderAndIsolateFailures() throws Exception {
+        try (StubHub hub = new StubHub()
+                .dsl("/batch.example.dsl", "section:card .card {\ntext: a\n}")
+                .delay("/batch.example.dsl", 100)) {
+            List<Page> pages = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                pages.add(new Page("<div class='card'><a>hub-" + i + "</a></div>", "https://batch.example/p/" + i));
+            }
+            pages.add(2, new Page("<div class='card'><a>x</a></div>", "not a url"));
+            pages.add(4, new Page("<div class='row'><a>inline</a></div>"
+                    + "<script type='text/plain' name='tv-like'>section:row .row {\ntext: a\n}</script>",
+                    "https://batch.example/inline"));
+
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            List<List<Map<String, Object>>> results;
+            try {
+                results = TV.likeAll(pages, hub.url(), null, executor);
+            } finally {
+                executor.shutdownNow();
+            }
+
+            Assert.assertEquals(8, results.size());
+            Assert.assertEquals("hub-0", value(results.get(0)));
+            Assert.assertEquals("hub-1", value(results.get(1)));
+            Assert.assertTrue(results.get(2).isEmpty());
+            Assert.assertEquals("hub-2", value(results.get(3)));
+            Assert.assertEquals("inline", value(results.get(4)));
+            Assert.assertEquals("hub-5", value(results.get(7)));
+            Assert.assertEquals(1, hub.count("/batch.example.dsl"));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object value(List<Map<String, Object>> result) {
+        Assert.assertEquals(1, result.size());
+        return ((Map<String, Object>) result.get(0).get("text")).get("value");
+    }
+}
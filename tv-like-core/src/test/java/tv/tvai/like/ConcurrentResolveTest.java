@@ -0,0 +1,197 @@
+package tv.tvai.like;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import tv.tvai.like.enums.ResolveModeEnum;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class ConcurrentResolveTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldPreferHigherPriorityCandidateEvenWhenSlower() throws Exception {
+        try (StubHub hub = new StubHub()
+                .dsl("/www.foo.example.dsl", "section:a .a {\ntext: a\n}")
+                .delay("/www.foo.example.dsl", 300)
+                .dsl("/foo.example.dsl", "section:b .b {\ntext: b\n}")) {
+            TVLikeDSL dsl = new TVLikeDSL(hub.url(), null);
+            dsl.setResolveMode(ResolveModeEnum.CONCURRENT);
+
+            Assert.assertEquals("section:a .a {\ntext: a\n}", dsl.getDSL(null, "www.foo.example"));
+        }
+    }
+
+    @Test
+    public void shouldOverlapSlowMissesWithLaterHit() throws Exception {
+        try (StubHub hub = new StubHub()
+                .delay("/www.foo.example.dsl", 600)
+                .delay("/foo.example.dsl", 600)
+                .dsl("/example/foo/www.dsl", "section:c .c {\ntext: c\n}")
+                .delay("/example/foo/www.dsl", 600)
+                .delay("/example/foo.dsl", 5_000)) {
+            TVLikeDSL dsl = new TVLikeDSL(hub.url(), null);
+            dsl.setResolveMode(ResolveModeEnum.CONCURRENT);
+
+            long start = System.nanoTime();
+            String result = dsl.getDSL(null, "www.foo.example");
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+            Assert.assertEquals("section:c .c {\ntext: c\n}", result);
+            Assert.assertTrue("took " + elapsedMillis + "ms", elapsedMillis < 1_500);
+        }
+    }
+
+    @Test
+    public void shouldFetchOnceForConcurrentLikesOfSameHost() throws Exception {
+        final String html = "<ul class='list'><li><a href='/a1'>one</a></li></ul>";
+        try (StubHub hub = new StubHub()
+                .dsl("/herd.example.dsl", "section:list .list {\nitems: li {\ntext: a\n}\n}")
+                .delay("/herd.example.dsl", 300)) {
+            final String hubUrl = hub.url();
+            final CountDownLatch start = new CountDownLatch(1);
+            ExecutorService pool = Executors.newFixedThreadPool(64);
+            try {
+                List<Future<List<Map<String, Object>>>> results = new ArrayList<>();
+                for (int i = 0; i < 64; i++) {
+                    results.add(pool.submit(new Callable<List<Map<String, Object>>>() {
+                        @Override
+                        public List<Map<String, Object>> call() throws Exception {
+                            start.await();
+                            return new TV(html, "https://herd.example/list", hubUrl).like();
+                        }
+                    }));
+                }
+                start.countDown();
+
+                for (Future<List<Map<String, Object>>> result : results) {
+                    Assert.assertEquals(1, result.get(10, TimeUnit.SECONDS).size());
+                }
+                Assert.assertEquals(1, hub.total());
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    @Test
+    public void shouldShareMissAndBoundWaiters() throws Exception {
+        try (StubHub hub = new StubHub().delay("/gone.example.dsl", 1_000)) {
+            final TVLikeDSL dsl = new TVLikeDSL(hub.url(), null);
+            dsl.setLookupTimeoutMillis(300);
+            ExecutorService pool = Executors.newFixedThreadPool(16);
+            try {
+                List<Future<RuleSet>> results = new ArrayList<>();
+                for (int i = 0; i < 16; i++) {
+                    results.add(pool.submit(new Callable<RuleSet>() {
+                        @Override
+                        public RuleSet call() throws Exception {
+                            return dsl.getHubRuleSet("gone.example", null);
+                        }
+                    }));
+                }
+                long begin = System.nanoTime();
+                for (Future<RuleSet> result : results) {
+                    Assert.assertNull(result.get(5, TimeUnit.SECONDS));
+                }
+                long elapsedMillis = (System.nanoTime() - begin) / 1_000_000;
+
+                Assert.assertTrue("took " + elapsedMillis + "ms", elapsedMillis < 1_000);
+                Assert.assertEquals(1, hub.count("/gone.example.dsl"));
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    @Test
+    public void shouldNotJoinFlightOfInstanceWithOtherPack() throws Exception {
+        String packed = "section:packed .packed {\ntext: a\n}";
+        File file = folder.newFile("hub.pack");
+        new DslPackBuilder().add("example/split", packed).write(file);
+        try (StubHub hub = new StubHub()
+                .dsl("/split.example.dsl", "section:hub .hub {\ntext: a\n}")
+                .delay("/split.example.dsl", 1_000)) {
+            final TVLikeDSL hubOnly = new TVLikeDSL(hub.url(), null);
+            TVLikeDSL withPack = new TVLikeDSL(hub.url(), null);
+            withPack.setPack(DslPack.open(file));
+            ExecutorService pool = Executors.newSingleThreadExecutor();
+            try {
+                Future<RuleSet> slow = pool.submit(new Callable<RuleSet>() {
+                    @Override
+                    public RuleSet call() throws Exception {
+                        return hubOnly.getHubRuleSet("split.example", null);
+                    }
+                });
+                long deadline = System.currentTimeMillis() + 5_000;
+                while (hub.count("/split.example.dsl") == 0 && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(10);
+                }
+
+                long begin = System.nanoTime();
+                RuleSet ruleSet = withPack.getHubRuleSet("split.example", null);
+                long elapsedMillis = (System.nanoTime() - begin) / 1_000_000;
+
+                Assert.assertSame(RuleSetCache.shared().get(packed), ruleSet);
+                Assert.assertTrue("took " + elapsedMillis + "ms", elapsedMillis < 500);
+                Assert.assertNotSame(ruleSet, slow.get(5, TimeUnit.SECONDS));
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    @Test
+    public void shouldStopWaitingOnAnotherCallersFlightOnceCancelled() throws Exception {
+        try (StubHub hub = new StubHub()
+                .dsl("/wait.example.dsl", "section:list .list {\ntext: a\n}")
+                .delay("/wait.example.dsl", 2_000)) {
+            final TVLikeDSL dsl = new TVLikeDSL(hub.url(), null);
+            final Cancellation cancellation = new Cancellation();
+            ExecutorService pool = Executors.newFixedThreadPool(2);
+            try {
+                Future<RuleSet> leader = pool.submit(new Callable<RuleSet>() {
+                    @Override
+                    public RuleSet call() throws Exception {
+                        return dsl.getHubRuleSet("wait.example", null);
+                    }
+                });
+                long deadline = System.currentTimeMillis() + 5_000;
+                while (hub.count("/wait.example.dsl") == 0 && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(10);
+                }
+                Future<RuleSet> waiter = pool.submit(new Callable<RuleSet>() {
+                    @Override
+                    public RuleSet call() throws Exception {
+                        return dsl.getHubRuleSet("wait.example", cancellation);
+                    }
+                });
+                Thread.sleep(100);
+
+                long begin = System.nanoTime();
+                cancellation.cancel();
+                Assert.assertNull(waiter.get(5, TimeUnit.SECONDS));
+                long elapsedMillis = (System.nanoTime() - begin) / 1_000_000;
+
+                Assert.assertTrue("took " + elapsedMillis + "ms", elapsedMillis < 500);
+                Assert.assertNotNull(leader.get(5, TimeUnit.SECONDS));
+                Assert.assertEquals(1, hub.count("/wait.example.dsl"));
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+    }
+}
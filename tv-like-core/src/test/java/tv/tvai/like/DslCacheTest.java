@@ -0,0 +1,197 @@
+package tv.tvai.like;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.concurrent.CountDownLatch;
+
+public class DslCacheTest {
+
+    private static final String DSL = "section:list .list {\ntext: a\n}";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldServeFreshEntriesWithoutHittingHub() throws Exception {
+        try (StubHub hub = new StubHub().dsl("/example.com.dsl", DSL)) {
+            TVLikeDSL dsl = new TVLikeDSL(hub.url(), new DslCache(16, 60_000, null));
+
+            Assert.assertEquals(DSL, dsl.getDSL(null, "example.com"));
+            Assert.assertEquals(DSL, dsl.getDSL(null, "example.com"));
+
+            Assert.assertEquals(1, hub.count("/example.com.dsl"));
+        }
+    }
+
+    @Test
+    public void shouldRevalidateExpiredEntriesWithEtag() throws Exception {
+        try (StubHub hub = new StubHub().dsl("/example.com.dsl", DSL)) {
+            TVLikeDSL dsl = new TVLikeDSL(hub.url(), new DslCache(16, 0, null));
+            dsl.setStaleWhileRevalidate(false);
+
+            Assert.assertEquals(DSL, dsl.getDSL(null, "example.com"));
+            Assert.assertEquals(DSL, dsl.getDSL(null, "example.com"));
+
+            Assert.assertEquals("200 /example.com.dsl", hub.requests().get(0));
+            Assert.assertEquals("304 /example.com.dsl", hub.requests().get(1));
+        }
+    }
+
+    @Test
+    public void shouldReloadEntriesFromDirectoryStore() throws Exception {
+        File dir = folder.newFolder("dsl");
+        try (StubHub hub = new StubHub().dsl("/example.com.dsl", DSL)) {
+            new TVLikeDSL(hub.url(), new DslCache(16, 60_000, dir)).getDSL(null, "example.com");
+
+            TVLikeDSL restarted = new TVLikeDSL(hub.url(), new DslCache(16, 60_000, dir));
+            Assert.assertEquals(DSL, restarted.getDSL(null, "example.com"));
+
+            Assert.assertEquals(1, hub.total());
+        }
+    }
+
+    @Test
+    public void shouldRememberHostsWithoutDsl() throws Exception {
+        try (StubHub hub = new StubHub()) {
+            TVLikeDSL dsl = new TVLikeDSL(hub.url(), new DslCache(16, 60_000, 60_000, null));
+
+            Assert.assertNull(dsl.getDSL(null, "www.foo.example"));
+            int walked = hub.total();
+            Assert.assertNull(dsl.getDSL(null, "www.foo.example"));
+
+            Assert.assertEquals(4, walked);
+            Assert.assertEquals(walked, hub.total());
+        }
+    }
+
+    @Test
+    public void shouldGoStraightToWinningCandidate() throws Exception {
+        try (StubHub hub = new StubHub().dsl("/example/foo.dsl", DSL)) {
+            TVLikeDSL dsl = new TVLikeDSL(hub.url(), new DslCache(16, 0, 60_000, null));
+            dsl.setStaleWhileRevalidate(false);
+
+            Assert.assertEquals(DSL, dsl.getDSL(null, "www.foo.example"));
+            hub.requests().clear();
+            Assert.assertEquals(DSL, dsl.getDSL(null, "www.foo.example"));
+
+            Assert.assertEquals(1, hub.total());
+            Assert.assertEquals("304 /example/foo.dsl", hub.requests().get(0));
+        }
+    }
+
+    @Test
+    public void shouldWalkCandidatesAgainOnceWinningRouteExpires() throws Exception {
+        try (StubHub hub = new StubHub().dsl("/example/foo.dsl", DSL)) {
+            TVLikeDSL dsl = new TVLikeDSL(hub.url(), new DslCache(16, 60_000, 60_000, 0, null));
+
+            Assert.assertEquals(DSL, dsl.getDSL(null, "www.foo.example"));
+            hub.dsl("/www.foo.example.dsl", "section:moved .moved {\ntext: m\n}");
+
+            Assert.assertEquals("section:moved .moved {\ntext: m\n}", dsl.getDSL(null, "www.foo.example"));
+        }
+    }
+
+    @Test
+    public void shouldServeStaleEntryWhileRefreshingInBackground() throws Exception {
+        String changed = "section:list .list {\ntext: b\n}";
+        DslCache cache = new DslCache(16, 0, null);
+        try (StubHub hub = new StubHub().dsl("/example.com.dsl", DSL)) {
+            TVLikeDSL dsl = new TVLikeDSL(hub.url(), cache);
+            dsl.setRefresher(new DslRefresher(1, 4, 0));
+            Assert.assertEquals(DSL, dsl.getDSL(null, "example.com"));
+
+            hub.dsl("/example.com.dsl", changed).delay("/example.com.dsl", 500);
+            long start = System.nanoTime();
+            Assert.assertEquals(DSL, dsl.getDSL(null, "example.com"));
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+            Assert.assertTrue("took " + elapsedMillis + "ms", elapsedMillis < 300);
+
+            waitFor(cache, hub.url() + "example.com.dsl", changed);
+            Assert.assertEquals(2, hub.count("/example.com.dsl"));
+            long misses = RuleSetCache.shared().getMissCount();
+            Assert.assertNotNull(RuleSetCache.shared().get(changed));
+            Assert.assertEquals(misses, RuleSetCache.shared().getMissCount());
+        }
+    }
+
+    @Test
+    public void shouldKeepRuleSetWhenRefreshedDslIsUnchanged() throws Exception {
+        DslCache cache = new DslCache(16, 0, null);
+        try (StubHub hub = new StubHub().dsl("/example.com.dsl", DSL)) {
+            TVLikeDSL dsl = new TVLikeDSL(hub.url(), cache);
+            dsl.setRefresher(new DslRefresher(1, 4, 0));
+            Assert.assertEquals(DSL, dsl.getDSL(null, "example.com"));
+            long fetchedAt = cache.get(hub.url() + "example.com.dsl").getFetchedAt();
+
+            Thread.sleep(5);
+            Assert.assertEquals(DSL, dsl.getDSL(null, "example.com"));
+            long deadline = System.currentTimeMillis() + 2_000;
+            while (cache.get(hub.url() + "example.com.dsl").getFetchedAt() == fetchedAt
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            Assert.assertEquals("304 /example.com.dsl", hub.requests().get(1));
+            Assert.assertEquals(DSL, cache.get(hub.url() + "example.com.dsl").getDsl());
+        }
+    }
+
+    @Test
+    public void shouldCoalesceAndCapPendingRefreshes() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        Runnable blocked = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        DslRefresher refresher = new DslRefresher(1, 2, 0);
+
+        Assert.assertTrue(refresher.schedule("a", blocked));
+        Assert.assertFalse(refresher.schedule("a", blocked));
+        Assert.assertTrue(refresher.schedule("b", blocked));
+        Assert.assertFalse(refresher.schedule("c", blocked));
+        Assert.assertEquals(2, refresher.pendingCount());
+
+        release.countDown();
+        long deadline = System.currentTimeMillis() + 2_000;
+        while (refresher.pendingCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(refresher.schedule("a", blocked));
+    }
+
+    private static void waitFor(DslCache cache, String url, String dsl) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2_000;
+        while (!dsl.equals(cache.get(url).getDsl()) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(dsl, cache.get(url).getDsl());
+    }
+
+    @Test
+    public void shouldIgnoreDiskEntryWithCorruptLength() throws Exception {
+        File dir = folder.newFolder("corrupt");
+        DslDiskStore store = new DslDiskStore(dir);
+        String url = "https://hub.example/example.com.dsl";
+        store.write(new DslCacheEntry(url, DSL, null, null, 0, Long.MAX_VALUE));
+        File[] files = dir.listFiles();
+        Assert.assertEquals(1, files.length);
+        try (RandomAccessFile file = new RandomAccessFile(files[0], "rw")) {
+            // The stored url's length, right after the magic number and version.
+            file.seek(8);
+            file.writeInt(Integer.MAX_VALUE - 8);
+        }
+
+        Assert.assertNull(store.read(url));
+    }
+}
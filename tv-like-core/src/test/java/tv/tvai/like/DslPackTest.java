@@ -0,0 +1,86 @@
+package tv.tvai.like;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+public class DslPackTest {
+
+    private static final String DSL = "section:list .list {\ntext: a\n}";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldSnapshotDirectoryUnderHubPaths() throws Exception {
+        File dir = folder.newFolder("hub");
+        write(new File(dir, "www.foo.example.dsl"), "\n" + DSL + "\n");
+        write(new File(dir, "example/bar.dsl"), "section:bar .bar {\ntext: b\n}");
+        write(new File(dir, "blank.example.dsl"), "  \n");
+        write(new File(dir, "notes.txt"), DSL);
+        File file = new File(folder.getRoot(), "hub.pack");
+
+        Assert.assertEquals(2, new DslPackBuilder().addDirectory(dir).write(file));
+
+        DslPack pack = DslPack.open(file);
+        Assert.assertEquals(2, pack.size());
+        Assert.assertEquals(DSL, pack.get("www.foo.example"));
+        Assert.assertEquals("section:bar .bar {\ntext: b\n}", pack.get("example/bar"));
+        Assert.assertNull(pack.get("blank.example"));
+        Assert.assertNull(pack.get("notes"));
+        Assert.assertNull(pack.get("example"));
+    }
+
+    @Test
+    public void shouldFindEveryKeyByBinarySearch() throws Exception {
+        DslPackBuilder builder = new DslPackBuilder();
+        for (int i = 0; i < 500; i++) {
+            builder.add("host" + i + ".example", "section:s" + i + " .s {\ntext: " + i + "\n}");
+        }
+        builder.add("été.example", "section:utf8 .u {\ntext: é\n}");
+        File file = folder.newFile("many.pack");
+        builder.write(file);
+
+        DslPack pack = DslPack.open(file);
+        for (int i = 0; i < 500; i++) {
+            Assert.assertEquals("section:s" + i + " .s {\ntext: " + i + "\n}", pack.get("host" + i + ".example"));
+        }
+        Assert.assertEquals("section:utf8 .u {\ntext: é\n}", pack.get("été.example"));
+        Assert.assertNull(pack.get("host500.example"));
+        Assert.assertNull(pack.get(""));
+    }
+
+    @Test
+    public void shouldServePackedHostWithoutHittingHub() throws Exception {
+        File file = folder.newFile("hub.pack");
+        new DslPackBuilder().add("example/foo", DSL).write(file);
+        try (StubHub hub = new StubHub().dsl("/bar.example.dsl", "section:bar .bar {\ntext: b\n}")) {
+            TVLikeDSL dsl = new TVLikeDSL(hub.url(), new DslCache(16, 60_000, null));
+            dsl.setPack(DslPack.open(file));
+
+            Assert.assertEquals(DSL, dsl.getDSL(null, "www.foo.example:8080"));
+            Assert.assertEquals(0, hub.total());
+
+            Assert.assertEquals("section:bar .bar {\ntext: b\n}", dsl.getDSL(null, "bar.example"));
+            Assert.assertEquals(1, hub.count("/bar.example.dsl"));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectForeignFiles() throws Exception {
+        File file = folder.newFile("foreign.pack");
+        write(file, "not a pack at all");
+        DslPack.open(file);
+    }
+
+    private static void write(File file, String content) throws IOException {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
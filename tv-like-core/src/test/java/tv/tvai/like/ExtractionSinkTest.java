@@ -0,0 +1,77 @@
+package tv.tvai.like;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+public class ExtractionSinkTest {
+
+    @Test
+    public void shouldReportNestedCallsAndSkipEmptyItems() {
+        Document doc = Jsoup.parse("<ul class='list'><h2>Hot</h2>"
+                + "<li><a>one</a></li><li><span>empty</span></li><li><a>two</a></li></ul>"
+                + "<ul class='list'><li><span>empty</span></li></ul>");
+        RuleSet ruleSet = new RuleParser().compile("section:list .list {\n"
+                + "text: h2\n"
+                + "items: li {\n"
+                + "text: a [badge: new]\n"
+                + "} [img-ratio: 4/3]\n"
+                + "}\n");
+        RecordingSink sink = new RecordingSink();
+
+        new Extractor().extract(doc, ruleSet.getPathRule("/"), sink);
+
+        Assert.assertEquals(Arrays.asList(
+                "beginSection list {}", "field text=Hot {}",
+                "beginItems {img-ratio=4/3}",
+                "beginItem", "field text=one {badge=new}", "endItem",
+                "beginItem", "field text=two {badge=new}", "endItem",
+                "endItems", "endSection",
+                "beginSection list {}", "endSection"), sink.calls);
+    }
+
+    private static final class RecordingSink implements ExtractionSink {
+        private final List<String> calls = new ArrayList<>();
+
+        @Override
+        public void beginSection(String name, Map<String, Object> options) {
+            calls.add("beginSection " + name + " " + options);
+        }
+
+        @Override
+        public void field(String name, String value, Map<String, Object> options) {
+            calls.add("field " + name + "=" + value + " " + options);
+        }
+
+        @Override
+        public void beginItems(Map<String, Object> options) {
+            calls.add("beginItems " + options);
+        }
+
+        @Override
+        public void beginItem() {
+            calls.add("beginItem");
+        }
+
+        @Override
+        public void endItem() {
+            calls.add("endItem");
+        }
+
+        @Override
+        public void endItems() {
+            calls.add("endItems");
+        }
+
+        @Override
+        public void endSection() {
+            calls.add("endSection");
+        }
+    }
+}
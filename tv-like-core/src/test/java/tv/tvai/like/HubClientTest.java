@@ -0,0 +1,69 @@
+package tv.tvai.like;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HubClientTest {
+
+    private static final String DSL = "section:list .list {\ntext: a\n}";
+
+    @Test
+    public void shouldRequestPlainTextAndDecodeGzip() throws Exception {
+        StringBuilder big = new StringBuilder();
+        for (int i = 0; i < 2_000; i++) {
+            big.append("section:s").append(i).append(" .s").append(i).append(" {\ntext: é\n}\n");
+        }
+        try (StubHub hub = new StubHub().gzip().dsl("/example.com.dsl", big.toString())) {
+            HubResponse response = HubClient.get(hub.url() + "example.com.dsl", HubClient.TEXT_PLAIN,
+                    null, null, HubCall.withTimeout(5_000));
+
+            Assert.assertEquals(200, response.getStatus());
+            Assert.assertEquals(big.toString(), response.getBody());
+            Assert.assertEquals("text/plain", hub.header("/example.com.dsl", "Accept"));
+            Assert.assertEquals("gzip", hub.header("/example.com.dsl", "Accept-Encoding"));
+        }
+    }
+
+    @Test
+    public void shouldReuseConnectionsAcrossLookups() throws Exception {
+        try (StubHub hub = new StubHub().dsl("/example.com.dsl", DSL)) {
+            TVLikeDSL dsl = new TVLikeDSL(hub.url(), null);
+            for (int i = 0; i < 5; i++) {
+                Assert.assertEquals(DSL, dsl.getDSL(null, "www.example.com"));
+            }
+
+            // Each lookup misses on www.example.com first, so ten requests in all. The stub server
+            // occasionally closes an idle connection itself, so only assert that they are reused.
+            Assert.assertEquals(10, hub.total());
+            Assert.assertTrue(hub.connections() + " connections", hub.connections() < hub.total());
+        }
+    }
+
+    @Test
+    public void shouldBoundWholeLookupByDeadline() throws Exception {
+        try (StubHub hub = new StubHub()
+                .delay("/www.foo.example.dsl", 400)
+                .delay("/foo.example.dsl", 400)
+                .delay("/example/foo/www.dsl", 400)
+                .dsl("/example/foo.dsl", DSL)
+                .delay("/example/foo.dsl", 400)) {
+            TVLikeDSL dsl = new TVLikeDSL(hub.url(), null);
+            dsl.setLookupTimeoutMillis(600);
+
+            long start = System.nanoTime();
+            Assert.assertNull(dsl.getDSL(null, "www.foo.example"));
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+            Assert.assertTrue("took " + elapsedMillis + "ms", elapsedMillis < 1_000);
+            Assert.assertEquals(0, hub.count("/example/foo.dsl"));
+        }
+    }
+
+    @Test
+    public void shouldFailOnceDeadlineHasPassed() {
+        HubResponse response = HubClient.get("http://127.0.0.1:1/x.dsl", HubClient.TEXT_PLAIN,
+                null, null, new HubCall(System.nanoTime() - 1));
+
+        Assert.assertTrue(response.isFailed());
+    }
+}
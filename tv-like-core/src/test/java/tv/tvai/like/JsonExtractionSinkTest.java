@@ -0,0 +1,105 @@
+package tv.tvai.like;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class JsonExtractionSinkTest {
+
+    @Test
+    public void shouldWriteSameJsonAsMapOutput() throws Exception {
+        String html = "<ul class='list'><h2>Hot \"new\"</h2><li><a href='/a1'>one</a></li><li><i>none</i></li>"
+                + "<li><a href='/a2'>two</a></li></ul>"
+                + "<script type='text/plain' name='tv-like'>section:list .list {\n"
+                + "text: h2 [badge: top]\n"
+                + "items: li {\ntext: a\nlink: a [attr: href] [transform: abs-url]\n} [img-ratio: 16/9]\n"
+                + "} [layout: row]\n</script>";
+        StringWriter out = new StringWriter();
+
+        new TV(html, "https://example.com/").likeJson(out);
+
+        Assert.assertEquals("[{\"section\":\"list\",\"layout\":\"row\","
+                + "\"text\":{\"badge\":\"top\",\"value\":\"Hot \\\"new\\\"\"},"
+                + "\"items\":{\"img-ratio\":\"16/9\",\"value\":["
+                + "{\"link\":{\"value\":\"https://example.com/a1\"},\"text\":{\"value\":\"one\"}},"
+                + "{\"link\":{\"value\":\"https://example.com/a2\"},\"text\":{\"value\":\"two\"}}]}}]", out.toString());
+    }
+
+    @Test
+    public void shouldReplaceOptionsNamedLikeFieldsInPlace() throws Exception {
+        String html = "<div class='card'><a href='/a1'>one</a><ul><li>x</li></ul></div>"
+                + "<div class='card'><ul><li>y</li></ul></div>"
+                + "<script type='text/plain' name='tv-like'>section:card .card {\n"
+                + "text: a [badge: top]\n"
+                + "link: a [attr: href]\n"
+                + "items: li {\ntext: li\n} [img-ratio: 16/9]\n"
+                + "} [a: 1] [text: opt] [b: 2] [items: x] [img: none] [layout: row]\n</script>";
+        TV tv = new TV(html, "https://example.com/");
+        StringWriter out = new StringWriter();
+
+        tv.likeJson(out);
+
+        Assert.assertEquals(new ObjectMapper().writeValueAsString(tv.like()), out.toString());
+        // The second card has no link text, so its "text" option stays.
+        Assert.assertEquals("[{\"section\":\"card\",\"layout\":\"row\",\"a\":\"1\",\"b\":\"2\",\"img\":\"none\","
+                + "\"text\":{\"badge\":\"top\",\"value\":\"one\"},"
+                + "\"items\":{\"img-ratio\":\"16/9\",\"value\":[{\"text\":{\"value\":\"x\"}}]},\"link\":{\"value\":\"/a1\"}},"
+                + "{\"section\":\"card\",\"layout\":\"row\",\"a\":\"1\",\"b\":\"2\",\"img\":\"none\",\"text\":\"opt\","
+                + "\"items\":{\"img-ratio\":\"16/9\",\"value\":[{\"text\":{\"value\":\"y\"}}]}}]", out.toString());
+    }
+
+    @Test
+    public void shouldWriteNumbersLikeJackson() throws Exception {
+        Map<String, Object> options = new LinkedHashMap<>();
+        options.put("ratio", 1.5d);
+        options.put("scale", 0.25f);
+        options.put("rank", (short) 3);
+        options.put("price", new BigDecimal("12.50"));
+        options.put("huge", 1e21d);
+        options.put("missing", Double.NaN);
+        StringWriter out = new StringWriter();
+        JsonExtractionSink json = new JsonExtractionSink(out);
+        MapExtractionSink maps = new MapExtractionSink();
+
+        for (ExtractionSink sink : new ExtractionSink[]{json, maps}) {
+            sink.beginSection("s", Collections.<String, Object>emptyMap());
+            sink.field("text", "v", options);
+            sink.endSection();
+        }
+        json.finish();
+
+        Assert.assertEquals(new ObjectMapper().writeValueAsString(maps.getResult()), out.toString());
+    }
+
+    @Test
+    public void shouldEscapeLikeJackson() throws Exception {
+        StringWriter out = new StringWriter();
+        JsonExtractionSink sink = new JsonExtractionSink(out);
+        Map<String, Object> options = new LinkedHashMap<>();
+        options.put("flag", true);
+
+        sink.beginSection("s", Collections.<String, Object>emptyMap());
+        sink.field("text", "a\"b\\c\n\t\r\b\f\u0001\u001f/é", options);
+        sink.endSection();
+        sink.finish();
+
+        Assert.assertEquals("[{\"section\":\"s\",\"text\":{\"flag\":true,"
+                + "\"value\":\"a\\\"b\\\\c\\n\\t\\r\\b\\f\\u0001\\u001F/é\"}}]", out.toString());
+    }
+
+    @Test
+    public void shouldWriteEmptyArrayWithoutSections() throws Exception {
+        StringWriter out = new StringWriter();
+
+        new TV("<p>nothing</p><script type='text/plain' name='tv-like'>section:x .x {\ntext: a\n}</script>",
+                "https://example.com/").likeJson(out);
+
+        Assert.assertEquals("[]", out.toString());
+    }
+}
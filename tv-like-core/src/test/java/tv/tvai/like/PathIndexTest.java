@@ -0,0 +1,67 @@
+package tv.tvai.like;
+
+import org.junit.Assert;
+import org.junit.Test;
+import tv.tvai.like.util.AntPathMatcher;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class PathIndexTest {
+
+    private static final String[] PATTERNS = {
+            "/**", "/vodtype/**", "/vodtype/*.html", "/vodtype/1.html", "/vod*/**", "/voddetail/{id}.html",
+            "/voddetail/**", "/a/b/c", "/a/**/c", "/a/*/c", "/a/b/**", "a/b/c", "/play/{id}-{sid}-{nid}.html",
+            "/play/**/*.html", "/list/?.html", "/list/??.html", "/", "/*", "/search**", "/news/**/detail/**",
+    };
+
+    private static final String[] PATHS = {
+            "/", "/index.html", "/vodtype/1.html", "/vodtype/2.html", "/vodtype/2/3.html", "/voddetail/42.html",
+            "/voddetail/42/x.html", "/vodx", "/a/b/c", "/a/x/c", "/a/b/x/c", "/a/b/d", "a/b/c", "/a//b/c",
+            "/play/1-2-3.html", "/play/x/y.html", "/list/1.html", "/list/12.html", "/list/123.html",
+            "/search", "/searchx", "/news/a/detail/b", "/news/detail", "/other/deep/path",
+    };
+
+    @Test
+    public void shouldPickMostSpecificMatchLikeNaiveScan() {
+        Map<String, List<RuleNode>> pathRules = new LinkedHashMap<>();
+        for (String pattern : PATTERNS) {
+            pathRules.put(pattern, Collections.singletonList(new RuleNode(pattern, ".x")));
+        }
+        PathIndex index = new PathIndex(pathRules, 4);
+
+        for (int round = 0; round < 2; round++) {
+            for (String path : PATHS) {
+                Assert.assertEquals(path, naive(pathRules, path), index.lookup(path));
+            }
+        }
+    }
+
+    @Test
+    public void shouldPreferExactPatternOverEarlierWildcard() {
+        RuleSet ruleSet = new RuleParser().compile("path: /vodtype/** {\nsection:all .all {\ntext: a\n}\n}\n"
+                + "path: /vodtype/1.html {\nsection:one .one {\ntext: a\n}\n}\n"
+                + "path: /vodtype/*.html {\nsection:html .html {\ntext: a\n}\n}\n");
+
+        Assert.assertEquals("one", ruleSet.getPathRule("/vodtype/1.html").get(0).getName());
+        Assert.assertEquals("html", ruleSet.getPathRule("/vodtype/2.html").get(0).getName());
+        Assert.assertEquals("all", ruleSet.getPathRule("/vodtype/2/3").get(0).getName());
+        Assert.assertTrue(ruleSet.getPathRule("/other").isEmpty());
+    }
+
+    private static List<RuleNode> naive(Map<String, List<RuleNode>> pathRules, String path) {
+        AntPathMatcher matcher = new AntPathMatcher();
+        Comparator<String> comparator = matcher.getPatternComparator(path);
+        String best = null;
+        for (String pattern : pathRules.keySet()) {
+            if (matcher.match(pattern, path) && (best == null || comparator.compare(pattern, best) < 0)) {
+                best = pattern;
+            }
+        }
+        return best == null ? new ArrayList<RuleNode>() : pathRules.get(best);
+    }
+}
@@ -0,0 +1,103 @@
+package tv.tvai.like;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+
+public class PrefetchTest {
+
+    private static final String A = "section:a .a {\ntext: a\n}";
+    private static final String B = "section:b .b {\ntext: b\n}";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldResolveHostsWithOneBatchRequest() throws Exception {
+        String answer = "{\"a.example\":{\"path\":\"a.example\",\"dsl\":" + Json.quote(A) + ",\"etag\":\"\\\"1\\\"\"},"
+                + "\"www.b.example\":{\"path\":\"example/b\",\"dsl\":" + Json.quote(B) + "},"
+                + "\"c.example\":null}";
+        try (StubHub hub = new StubHub().dsl("/batch", answer)) {
+            TVLikeDSL dsl = new TVLikeDSL(hub.url(), new DslCache(16, 60_000, null));
+
+            Assert.assertEquals(2, dsl.prefetch(Arrays.asList("a.example", "WWW.B.example:443", "c.example", " ")));
+            Assert.assertEquals(1, hub.total());
+            Assert.assertEquals("{\"hosts\":[\"a.example\",\"www.b.example\",\"c.example\"]}", hub.requestBody("/batch"));
+
+            long misses = RuleSetCache.shared().getMissCount();
+            Assert.assertEquals(A, dsl.getDSL(null, "a.example"));
+            Assert.assertEquals(B, dsl.getDSL(null, "www.b.example"));
+            Assert.assertNull(dsl.getDSL(null, "c.example"));
+            Assert.assertNotNull(RuleSetCache.shared().get(A));
+            Assert.assertNotNull(RuleSetCache.shared().get(B));
+
+            Assert.assertEquals(1, hub.total());
+            Assert.assertEquals(misses, RuleSetCache.shared().getMissCount());
+        }
+    }
+
+    @Test
+    public void shouldLookUpOneByOneWithoutBatchRoute() throws Exception {
+        try (StubHub hub = new StubHub()
+                .dsl("/a.example.dsl", A)
+                .dsl("/example/b.dsl", B)) {
+            TVLikeDSL dsl = new TVLikeDSL(hub.url(), new DslCache(16, 60_000, null));
+
+            Assert.assertEquals(2, dsl.prefetch(Arrays.asList("a.example", "b.example", "c.example")));
+            Assert.assertEquals(1, hub.count("/batch"));
+            int requests = hub.total();
+
+            Assert.assertEquals(A, dsl.getDSL(null, "a.example"));
+            Assert.assertEquals(B, dsl.getDSL(null, "b.example"));
+            Assert.assertNull(dsl.getDSL(null, "c.example"));
+            Assert.assertEquals(requests, hub.total());
+        }
+    }
+
+    @Test
+    public void shouldFallBackForHostsTheBatchLeftOut() throws Exception {
+        String answer = "{\"a.example\":{\"path\":\"../elsewhere\",\"dsl\":" + Json.quote(A) + "}}";
+        try (StubHub hub = new StubHub()
+                .dsl("/batch", answer)
+                .dsl("/a.example.dsl", A)
+                .dsl("/b.example.dsl", B)) {
+            TVLikeDSL dsl = new TVLikeDSL(hub.url(), new DslCache(16, 60_000, null));
+
+            Assert.assertEquals(2, dsl.prefetch(Arrays.asList("a.example", "b.example")));
+            Assert.assertEquals(1, hub.count("/a.example.dsl"));
+            Assert.assertEquals(1, hub.count("/b.example.dsl"));
+        }
+    }
+
+    @Test
+    public void shouldCountPackedHostsWithoutAskingHub() throws Exception {
+        try (StubHub hub = new StubHub()) {
+            TVLikeDSL dsl = new TVLikeDSL(hub.url(), new DslCache(16, 60_000, null));
+            File file = folder.newFile("hub.pack");
+            new DslPackBuilder().add("a.example", A).write(file);
+            dsl.setPack(DslPack.open(file));
+
+            Assert.assertEquals(1, dsl.prefetch(Arrays.asList("a.example")));
+            Assert.assertEquals(0, hub.total());
+        }
+    }
+
+    @Test
+    public void shouldParseAndQuoteJson() {
+        Object parsed = Json.parse(" {\"k\": [1, -2.5e1, true, false, null, \"a\\\"\\n\\u00e9\"], \"o\": {}} ");
+        Assert.assertEquals("{k=[1.0, -25.0, true, false, null, a\"\né], o={}}", parsed.toString());
+        Assert.assertEquals("\"a\\\"\\\\\\n\\u0001\"", Json.quote("a\"\\\n\u0001"));
+        for (String bad : new String[]{"", "{", "[1,]", "{\"a\" 1}", "\"\\x\"", "tru", "{} x"}) {
+            try {
+                Json.parse(bad);
+                Assert.fail(bad);
+            } catch (IllegalArgumentException expected) {
+                // expected
+            }
+        }
+    }
+}
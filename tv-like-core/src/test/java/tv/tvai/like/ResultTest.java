@@ -0,0 +1,77 @@
+package tv.tvai.like;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class ResultTest {
+
+    @Test
+    public void shouldIterateInHashMapOrder() {
+        Random random = new Random(42);
+        for (int round = 0; round < 500; round++) {
+            Result result = new Result("v");
+            Map<String, Object> expected = new HashMap<>();
+            expected.put("value", "v");
+            for (int op = 0; op < 40; op++) {
+                String key = "k" + random.nextInt(30);
+                if (random.nextInt(4) == 0) {
+                    Assert.assertEquals(expected.remove(key), result.remove(key));
+                } else {
+                    Assert.assertEquals(expected.put(key, op), result.put(key, op));
+                }
+                Assert.assertEquals(entries(expected), entries(result));
+            }
+            Assert.assertEquals(expected, result);
+            Assert.assertEquals(expected.hashCode(), result.hashCode());
+        }
+    }
+
+    @Test
+    public void shouldShareLayoutUntilModified() {
+        Map<String, Object> options = new LinkedHashMap<>();
+        options.put("badge", "hot");
+        options.put("img-ratio", "16/9");
+        Result.Layout layout = Result.Layout.of(options);
+
+        Result first = new Result("one", layout);
+        Result second = new Result("two", layout);
+        first.put("badge", "cold");
+        Iterator<Map.Entry<String, Object>> it = second.entrySet().iterator();
+        while (it.hasNext()) {
+            if ("img-ratio".equals(it.next().getKey())) {
+                it.remove();
+            }
+        }
+
+        Map<String, Object> expected = new HashMap<>();
+        expected.put("value", "one");
+        expected.putAll(options);
+        expected.put("badge", "cold");
+        Assert.assertEquals(entries(expected), entries(first));
+        Assert.assertEquals("hot", second.get("badge"));
+        Assert.assertFalse(second.containsKey("img-ratio"));
+        Assert.assertEquals("two", second.get("value"));
+        Assert.assertEquals("16/9", new Result("three", layout).get("img-ratio"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void shouldKeepValueReadOnly() {
+        new Result("v").put("value", "other");
+    }
+
+    private static List<String> entries(Map<String, Object> map) {
+        List<String> entries = new ArrayList<>();
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            entries.add(entry.getKey() + "=" + entry.getValue());
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,65 @@
+package tv.tvai.like;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class RuleIndexTest {
+
+    private static final String[] SELECTORS = {
+            ".public-list-box",
+            "div.public-list-box.public-pic-b",
+            "DIV.Public-List-Box",
+            "a[href^=/vodtype]",
+            "li.swiper-slide > a",
+            ".head-nav .swiper-slide",
+            "img.lazy, .title-h",
+            "*",
+            "[class*=hide]",
+            ".public-list-exp:has(img)",
+            "div:not(.fa)",
+            "#none, em",
+            "h4 + .public-list-subtitle",
+            ".box-width ~ div",
+    };
+
+    @Test
+    public void shouldOfferSameMatchesAsTestingEveryRule() throws IOException {
+        Document doc = Jsoup.parse(new File("../test/html/mtyy1_com_index.html"), "UTF-8", "https://mtyy1.com/");
+        List<RuleNode> rules = new ArrayList<>();
+        for (String selector : SELECTORS) {
+            RuleNode rule = new RuleNode(selector, selector);
+            Assert.assertTrue(selector, rule.compile());
+            rules.add(rule);
+        }
+        RuleIndex index = RuleIndex.build(rules);
+        RuleIndex.Candidates candidates = new RuleIndex.Candidates();
+
+        int matches = 0;
+        for (Element el : doc.getAllElements()) {
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < rules.size(); i++) {
+                if (el.is(rules.get(i).getEvaluator())) {
+                    expected.add(i);
+                }
+            }
+            index.candidates(el, candidates);
+            List<Integer> actual = new ArrayList<>();
+            for (int c = 0; c < candidates.size; c++) {
+                if (el.is(rules.get(candidates.indexes[c]).getEvaluator())) {
+                    actual.add(candidates.indexes[c]);
+                }
+            }
+            Assert.assertEquals(el.cssSelector(), expected, actual);
+            matches += expected.size();
+        }
+        Assert.assertTrue(matches > 0);
+    }
+}
@@ -0,0 +1,137 @@
+package tv.tvai.like;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+public class RuleParserTest {
+
+    private static final String DSL = "/* list pages */\n"
+            + "path: /list/** || /tag/*.html {\n"
+            + "    section:hero .hero-card {\n"
+            + "        text: .title [transform: trim | upper]\n"
+            + "        link: .title a [attr: href]\n"
+            + "        img: null [img-ratio: 16/9]\n"
+            + "    } [limit: 1]\n"
+            + "\n"
+            + "    SECTION : recommend .recommend-list {\n"
+            + "        items: li.card {\n"
+            + "            text: .title\n"
+            + "            img: img [attr: data-src] /* lazy */\n"
+            + "        } [limit: 12] [img-ratio: 2/3, badge: 'hot, new']\n"
+            + "        text: h2\n"
+            + "    }\n"
+            + "}\n";
+
+    @Test
+    public void shouldBuildRuleTree() {
+        RuleSet ruleSet = new RuleParser().compile(DSL);
+
+        Assert.assertEquals(2, ruleSet.getPathRules().size());
+        List<RuleNode> nodes = ruleSet.getPathRule("/tag/new.html");
+        Assert.assertEquals(nodes, ruleSet.getPathRule("/list/1"));
+        Assert.assertEquals(2, nodes.size());
+
+        RuleNode hero = nodes.get(0);
+        Assert.assertEquals("hero", hero.getName());
+        Assert.assertEquals(".hero-card", hero.getSelector());
+        Assert.assertEquals(".title", hero.getFieldSelectors().get("text"));
+        Assert.assertEquals("trim | upper", hero.getFieldOptions().get("text").getValues().get("transform"));
+        Assert.assertFalse(hero.getFieldSelectors().containsKey("img"));
+        Assert.assertEquals("16/9", hero.getFieldOptions().get("img").getValues().get("img-ratio"));
+        Assert.assertEquals(1L, hero.getLimit());
+
+        RuleNode recommend = nodes.get(1);
+        Assert.assertEquals("h2", recommend.getFieldSelectors().get("text"));
+        RuleNode items = recommend.getItemTemplate();
+        Assert.assertEquals("li.card", items.getSelector());
+        Assert.assertEquals("img", items.getFieldSelectors().get("img"));
+        Assert.assertEquals("data-src", items.getFieldOptions().get("img").getValues().get("attr"));
+        Assert.assertEquals("hot, new", items.getSectionOptions().getValues().get("badge"));
+        Assert.assertEquals(12L, items.getLimit());
+    }
+
+    @Test
+    public void shouldParseOneLineBlocksAndCarriageReturns() {
+        RuleSet ruleSet = new RuleParser().compile("path: /a/** { section:s .s { text: .t } }\r\n"
+                + "path: /b/** {\r\n  section:s .s {\r\n    text: .u\r\n  }\r\n}\r\n");
+
+        Assert.assertEquals(".t", ruleSet.getPathRule("/a/1").get(0).getFieldSelectors().get("text"));
+        Assert.assertEquals(".u", ruleSet.getPathRule("/b/1").get(0).getFieldSelectors().get("text"));
+    }
+
+    @Test
+    public void shouldUseSectionsWithoutPathForEveryPath() {
+        RuleSet ruleSet = new RuleParser().compile("section:a .a {\ntext: a\n}\n");
+
+        Assert.assertEquals(1, ruleSet.getPathRule("/any/where").size());
+        Assert.assertTrue(new RuleParser().compile("  /* nothing */  ").isEmpty());
+    }
+
+    @Test
+    public void shouldSkipWhatItDoesNotUnderstand() {
+        RuleSet ruleSet = new RuleParser().compile("path: /a/** {\n"
+                + "section:s .s {\n"
+                + "title: .ignored\n"
+                + "text: .t\n"
+                + "}\n"
+                + "section:broken .b {\n"
+                + "text: .never-closed\n");
+
+        List<RuleNode> nodes = ruleSet.getPathRule("/a/1");
+        Assert.assertEquals(1, nodes.size());
+        Assert.assertEquals("s", nodes.get(0).getName());
+        ruleSet = new RuleParser().compile("path: /a/** {\n"
+                + "section:s .s {\n"
+                + "title: .ignored\n"
+                + "text: .t\n"
+                + "}\n"
+                + "}\n");
+        Assert.assertEquals(".t", ruleSet.getPathRule("/a/1").get(0).getFieldSelectors().get("text"));
+    }
+
+    @Test
+    public void shouldKeepApostropheInOptionValue() {
+        RuleNode node = new RuleParser().compile("section:s .s {\n"
+                + "text: .t [label: Tom's pick]\n"
+                + "link: a [title: it's, badge: hot] [attr: href]\n"
+                + "img: img [alt: 'never closed]\n"
+                + "}\n").getPathRule("/").get(0);
+
+        Assert.assertEquals(".t", node.getFieldSelectors().get("text"));
+        Assert.assertEquals("Tom's pick", node.getFieldOptions().get("text").getValues().get("label"));
+        Assert.assertEquals("a", node.getFieldSelectors().get("link"));
+        Assert.assertEquals("it's", node.getFieldOptions().get("link").getValues().get("title"));
+        Assert.assertEquals("hot", node.getFieldOptions().get("link").getValues().get("badge"));
+        Assert.assertEquals("href", node.getFieldOptions().get("link").getValues().get("attr"));
+        Assert.assertEquals("img", node.getFieldSelectors().get("img"));
+        Assert.assertEquals("'never closed", node.getFieldOptions().get("img").getValues().get("alt"));
+    }
+
+    @Test
+    public void shouldReportLineAndColumnInStrictMode() {
+        assertError("path: /a/** {\n  section:s .s {\n    title: .t\n  }\n}\n", 3, 5);
+        assertError("path: /a/** {\n  section:s .s {\n    text: .t\n  }\n", 1, 13);
+        assertError("section:s .s {\n  text:\n}\n", 2, 8);
+        assertError("section:s .s {\n  items: li {\n  } [limit: 2\n}\n", 3, 5);
+        assertError("section: .s {\n}\n", 1, 10);
+        assertError("path: /a {\r\n}\r\n}\r\n", 3, 1);
+        assertError("section:s .s {\n  text: .t [transform: trim|replace(a)]\n}\n", 2, 8);
+    }
+
+    @Test
+    public void shouldAcceptWellFormedDslInStrictMode() {
+        Assert.assertEquals(2, new RuleParser().compileStrict(DSL).getPathRule("/list/x").size());
+    }
+
+    private static void assertError(String dsl, int line, int column) {
+        try {
+            new RuleParser().compileStrict(dsl);
+            Assert.fail("expected a parse error");
+        } catch (DslParseException e) {
+            Assert.assertEquals(e.getMessage(), line, e.getLine());
+            Assert.assertEquals(e.getMessage(), column, e.getColumn());
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package tv.tvai.like;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+public class RuleSetCacheTest {
+
+    private static final String DSL = "path: /list/** {\n"
+            + "section:list .list {\n"
+            + "items: li {\n"
+            + "text: a\n"
+            + "}\n"
+            + "}\n"
+            + "}\n";
+
+    @Test
+    public void shouldReuseCompiledRuleSetForSameDsl() {
+        RuleSetCache cache = new RuleSetCache(8);
+
+        RuleSet first = cache.get(DSL);
+        RuleSet second = cache.get(DSL);
+
+        Assert.assertSame(first, second);
+        Assert.assertEquals(1, cache.getMissCount());
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(1, first.getPathRule("/list/1").size());
+        Assert.assertTrue(first.getPathRule("/other").isEmpty());
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedRuleSet() {
+        RuleSetCache cache = new RuleSetCache(2);
+
+        RuleSet a = cache.get("section:a .a {\ntext: a\n}");
+        cache.get("section:b .b {\ntext: b\n}");
+        cache.get("section:a .a {\ntext: a\n}");
+        cache.get("section:c .c {\ntext: c\n}");
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(1, cache.getEvictionCount());
+        Assert.assertSame(a, cache.get("section:a .a {\ntext: a\n}"));
+        Assert.assertEquals(3, cache.getMissCount());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void shouldExposeImmutableRules() {
+        RuleSet ruleSet = new RuleParser().compile(DSL);
+        List<RuleNode> rules = ruleSet.getPathRule("/list/1");
+
+        rules.get(0).getItemTemplate().getFieldSelectors().put("img", "img");
+    }
+
+    @Test
+    public void shouldRejectInvalidSelectorsAtCompileTime() {
+        RuleSet ruleSet = new RuleParser().compile("section:bad div[ {\ntext: a\n}\n"
+                + "section:good .good {\ntext: a:nth-child(\nlink: a\n}");
+        List<RuleNode> rules = ruleSet.getPathRule("/");
+
+        Assert.assertEquals(1, rules.size());
+        Assert.assertEquals("good", rules.get(0).getName());
+        Assert.assertNotNull(rules.get(0).getEvaluator());
+        Assert.assertEquals(1, rules.get(0).getFieldEvaluators().size());
+        Assert.assertTrue(rules.get(0).getFieldEvaluators().containsKey("link"));
+    }
+}
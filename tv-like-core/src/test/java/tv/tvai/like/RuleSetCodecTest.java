@@ -0,0 +1,106 @@
+package tv.tvai.like;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class RuleSetCodecTest {
+
+    private static final String DSL = "path: /vodtype/** || /voddetail/** {\n"
+            + "section:nav .head-nav {\n"
+            + "items: .swiper-slide {\n"
+            + "text: a [transform: trim]\n"
+            + "link: a\n"
+            + "} [limit: 5] [badge: 'hot', wide]\n"
+            + "}\n"
+            + "section:cards .public-list-box {\n"
+            + "text: .public-list-subtitle [transform: collapse-ws]\n"
+            + "img: img [attr: data-src] [img-ratio: 2/3]\n"
+            + "link: a [transform: abs-url]\n"
+            + "} [limit: 3]\n"
+            + "section:broken div[ {\n"
+            + "text: a\n"
+            + "}\n"
+            + "}\n"
+            + "path: /** {\n"
+            + "section:logo .logo {\n"
+            + "img: img\n"
+            + "}\n"
+            + "}\n";
+
+    @Test
+    public void shouldExtractTheSameAfterRoundTrip() throws IOException {
+        Document doc = Jsoup.parse(new File("../test/html/mtyy1_com_index.html"), "UTF-8", "https://mtyy1.com/");
+        RuleSet original = new RuleParser().compile(DSL);
+
+        RuleSet decoded = RuleSetCodec.read(new ByteArrayInputStream(RuleSetCodec.encode(original)));
+
+        Assert.assertEquals(original.getContentHash(), decoded.getContentHash());
+        Assert.assertEquals(new ArrayList<>(original.getPathRules().keySet()),
+                new ArrayList<>(decoded.getPathRules().keySet()));
+        for (String path : Arrays.asList("/vodtype/1.html", "/voddetail/2.html", "/")) {
+            String expected = json(doc, original.getPathRule(path));
+            Assert.assertTrue(expected, expected.length() > 20);
+            Assert.assertEquals(path, expected, json(doc, decoded.getPathRule(path)));
+        }
+        Assert.assertSame(decoded.getPathRule("/vodtype/1"), decoded.getPathRule("/voddetail/1"));
+    }
+
+    @Test
+    public void shouldKeepOptionTypes() throws IOException {
+        RuleNode node = new RuleNode("s", ".s");
+        RuleNode.Options options = new RuleNode.Options();
+        options.putIfAbsent("text", "v");
+        options.putIfAbsent("flag", true);
+        options.putIfAbsent("off", false);
+        options.putIfAbsent("int", 7);
+        options.putIfAbsent("long", 1L << 40);
+        options.putIfAbsent("double", 0.5);
+        node.setSectionOptions(options);
+        Map<String, List<RuleNode>> rules = new LinkedHashMap<>();
+        rules.put("/**", Collections.singletonList(node));
+
+        RuleSet decoded = RuleSetCodec.decode(RuleSetCodec.encode(new RuleSet("hash", rules)));
+
+        Assert.assertEquals(options.getValues(), decoded.getPathRule("/").get(0).getSectionOptions().getValues());
+    }
+
+    @Test
+    public void shouldRejectForeignOrTruncatedData() throws IOException {
+        byte[] data = RuleSetCodec.encode(new RuleParser().compile(DSL));
+        assertRejected(Arrays.copyOf(data, data.length - 3));
+        assertRejected("path: /** {}".getBytes("UTF-8"));
+        byte[] otherVersion = data.clone();
+        otherVersion[7]++;
+        assertRejected(otherVersion);
+    }
+
+    private static void assertRejected(byte[] data) {
+        try {
+            RuleSetCodec.decode(data);
+            Assert.fail("expected an IOException");
+        } catch (IOException expected) {
+            // rejected
+        }
+    }
+
+    private static String json(Document doc, List<RuleNode> rules) throws IOException {
+        StringWriter out = new StringWriter();
+        JsonExtractionSink sink = new JsonExtractionSink(out);
+        new Extractor().extract(doc, rules, sink);
+        sink.finish();
+        return out.toString();
+    }
+}
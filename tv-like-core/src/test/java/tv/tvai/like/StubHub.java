@@ -0,0 +1,169 @@
+package tv.tvai.like;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Minimal in-process DSL hub for tests. Serves registered DSLs with an ETag and answers
+ * {@code If-None-Match} with 304; everything else is a 404. With {@link #gzip()} it compresses
+ * bodies for clients that accept it.
+ */
+class StubHub implements AutoCloseable {
+
+    private final HttpServer server;
+    private final Map<String, String> bodies = new ConcurrentHashMap<>();
+    private final Map<String, Long> delays = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> counts = new ConcurrentHashMap<>();
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    private final Map<String, Map<String, List<String>>> headers = new ConcurrentHashMap<>();
+    private final Map<String, String> requestBodies = new ConcurrentHashMap<>();
+    private final Set<InetSocketAddress> connections = ConcurrentHashMap.newKeySet();
+    private volatile boolean gzip;
+
+    StubHub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(java.util.concurrent.Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    StubHub dsl(String path, String body) {
+        bodies.put(path, body);
+        return this;
+    }
+
+    StubHub delay(String path, long millis) {
+        delays.put(path, millis);
+        return this;
+    }
+
+    StubHub gzip() {
+        gzip = true;
+        return this;
+    }
+
+    int count(String path) {
+        AtomicInteger count = counts.get(path);
+        return count == null ? 0 : count.get();
+    }
+
+    int total() {
+        return requests.size();
+    }
+
+    /**
+     * Number of distinct client connections seen so far.
+     */
+    int connections() {
+        return connections.size();
+    }
+
+    /**
+     * Value of request header {@code name} on the last request for {@code path}.
+     */
+    String header(String path, String name) {
+        Map<String, List<String>> last = headers.get(path);
+        if (last == null) {
+            return null;
+        }
+        for (Map.Entry<String, List<String>> header : last.entrySet()) {
+            if (header.getKey().equalsIgnoreCase(name)) {
+                return header.getValue().get(0);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Body of the last request for {@code path}, e.g. a POST.
+     */
+    String requestBody(String path) {
+        return requestBodies.get(path);
+    }
+
+    /**
+     * Requests seen so far as {@code "<status> <path>"}.
+     */
+    List<String> requests() {
+        return requests;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        counts.computeIfAbsent(path, k -> new AtomicInteger()).incrementAndGet();
+        headers.put(path, exchange.getRequestHeaders());
+        connections.add(exchange.getRemoteAddress());
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                received.write(buffer, 0, n);
+            }
+        }
+        requestBodies.put(path, new String(received.toByteArray(), StandardCharsets.UTF_8));
+        Long delay = delays.get(path);
+        if (delay != null) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        String body = bodies.get(path);
+        int status;
+        byte[] bytes = new byte[0];
+        if (body == null) {
+            status = 404;
+        } else {
+            String etag = "\"" + Integer.toHexString(body.hashCode()) + "\"";
+            exchange.getResponseHeaders().set("ETag", etag);
+            if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                status = 304;
+            } else {
+                status = 200;
+                bytes = body.getBytes(StandardCharsets.UTF_8);
+                String accepted = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                if (gzip && accepted != null && accepted.contains("gzip")) {
+                    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                    try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+                        out.write(bytes);
+                    }
+                    bytes = compressed.toByteArray();
+                    exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                }
+            }
+        }
+        requests.add(status + " " + path);
+        exchange.sendResponseHeaders(status, status == 200 ? bytes.length : -1);
+        try (OutputStream os = exchange.getResponseBody()) {
+            // Writing to a response declared without a body makes the server drop the connection.
+            if (bytes.length > 0) {
+                os.write(bytes);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -71,6 +71,56 @@ public class TVCoreBehaviorTest {
         Assert.assertEquals("two", castMap(values.get(1).get("text")).get("value"));
     }
 
+    @Test
+    public void shouldApplyArgumentTransformsAndIgnoreMalformedSteps() {
+        String html = "<html><body>"
+                + "<div class='card'><a href='/v/1'>Views: 1,234 [HD]</a></div>"
+                + "<script type='text/plain' name='tv-like'>"
+                + "section:card .card {\n"
+                + "text: a [transform: \"replace(',', '')|regex-extract('(\\d+) \\[')\"]\n"
+                + "link: a [attr: href] [transform: regex-extract('(')]\n"
+                + "img: a [attr: href] [transform: \"foo(bar|upper\"]\n"
+                + "}\n"
+                + "</script>"
+                + "</body></html>";
+
+        List<Map<String, Object>> result = new TV(html, "https://example.com/").like();
+
+        Assert.assertEquals(1, result.size());
+        Assert.assertEquals("1234", castMap(result.get(0).get("text")).get("value"));
+        Assert.assertEquals("/v/1", castMap(result.get(0).get("link")).get("value"));
+        Assert.assertEquals("/V/1", castMap(result.get(0).get("img")).get("value"));
+    }
+
+    @Test
+    public void shouldStopAfterSectionBudget() {
+        String html = "<html><body>"
+                + "<div class='row'><a href='/r1'>r1</a></div>"
+                + "<div class='row'><a href='/r2'>r2</a></div>"
+                + "<div class='card'><a href='/c1'>c1</a></div>"
+                + "<div class='row'><a href='/r3'>r3</a></div>"
+                + "<script type='text/plain' name='tv-like'>"
+                + "section:row .row {\n"
+                + "text: a\n"
+                + "} [limit: 1]\n"
+                + "section:card .card {\n"
+                + "text: a\n"
+                + "}\n"
+                + "</script>"
+                + "</body></html>";
+
+        List<Map<String, Object>> limited = new TV(html, "https://example.com/").like();
+        Assert.assertEquals(2, limited.size());
+        Assert.assertEquals("r1", castMap(limited.get(0).get("text")).get("value"));
+        Assert.assertEquals("c1", castMap(limited.get(1).get("text")).get("value"));
+
+        ExtractOptions options = new ExtractOptions();
+        options.setMaxSections(1);
+        List<Map<String, Object>> budgeted = new TV(html, "https://example.com/", null, options).like();
+        Assert.assertEquals(1, budgeted.size());
+        Assert.assertEquals("row", budgeted.get(0).get("section"));
+    }
+
     @SuppressWarnings("unchecked")
     private static Map<String, Object> castMap(Object value) {
         return (Map<String, Object>) value;
@@ -0,0 +1,67 @@
+package tv.tvai.like.transform;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TransformsTest {
+
+    @Test
+    public void shouldApplyChainInOrder() {
+        Transform[] chain = Transforms.compile("collapse-ws|substring-after('Score:')|number");
+
+        Assert.assertEquals(3, chain.length);
+        Assert.assertEquals("-8.5", Transforms.apply(chain, "  Score:\n  -8.5  / 10 ", null, null));
+        Assert.assertNull(Transforms.apply(Transforms.compile("digits|upper"), "n/a", null, null));
+    }
+
+    @Test
+    public void shouldParseQuotedArguments() {
+        Assert.assertEquals("1234567", Transforms.apply(Transforms.compile("replace(',', '')"), "1,234,567", null, null));
+        Assert.assertEquals("2019", Transforms.apply(Transforms.compile("regex-extract(\"(\\d{4})-(\\d+)\")"), "on 2019-05", null, null));
+        Assert.assertEquals("05", Transforms.apply(Transforms.compile("regex-extract('(\\d{4})-(\\d+)', 2)"), "on 2019-05", null, null));
+        Assert.assertEquals("a|b", Transforms.apply(Transforms.compile("substring-before(' | ')"), "a|b | c", null, null));
+        Assert.assertEquals("", Transforms.apply(Transforms.compile("substring-before('#')"), "abc", null, null));
+    }
+
+    @Test
+    public void shouldReturnSameInstanceWhenNothingChanges() {
+        String value = "already lower 123";
+
+        Assert.assertSame(value, Transforms.lowerCase(value));
+        Assert.assertSame(value, Transforms.collapseWhitespace(value));
+        Assert.assertSame("123", Transforms.digits("123"));
+        Assert.assertEquals("a b", Transforms.collapseWhitespace(" a \t b "));
+    }
+
+    @Test
+    public void shouldIgnoreUnknownAndRejectMalformedSteps() {
+        Assert.assertEquals(1, Transforms.compile("unknown|trim").length);
+        assertRejected("regex-extract('(')");
+        assertRejected("regex-extract('a', 1)");
+        assertRejected("replace('a')");
+        assertRejected("substring-after('x'");
+    }
+
+    @Test
+    public void shouldSkipMalformedStepsWhenLenient() {
+        Transform[] chain = Transforms.compileLenient("foo(bar|regex-extract('(')|replace(a)|upper");
+
+        Assert.assertEquals(1, chain.length);
+        Assert.assertEquals("ABC", Transforms.apply(chain, "abc", null, null));
+    }
+
+    @Test
+    public void shouldUpperCaseExpandingCharacters() {
+        Assert.assertEquals("STRASSE", Transforms.upperCase("STRAßE"));
+        Assert.assertSame("ABC 1", Transforms.upperCase("ABC 1"));
+    }
+
+    private static void assertRejected(String spec) {
+        try {
+            Transforms.compile(spec);
+            Assert.fail("expected " + spec + " to be rejected");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+    }
+}
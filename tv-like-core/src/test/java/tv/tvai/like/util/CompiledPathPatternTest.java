@@ -0,0 +1,63 @@
+package tv.tvai.like.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class CompiledPathPatternTest {
+
+    private static final String[] PATTERN_TOKENS = {
+            "a", "b", "ab", "*", "?", "**", "{id}", "a*b", "*.html", "??", "{id}-{sid}.html", "{id:[0-9]+}",
+            "x{n:\\d+}.html", "*a*", "a?c", "a{b", "}", "***", "", "*{id}", ".",
+    };
+
+    private static final String[] PATH_TOKENS = {
+            "a", "b", "ab", "abc", "aXb", "1.html", "12", "1-2.html", "x42.html", "", "a\nb", "\n", "a{b", "}", ".",
+            "aab", "axc",
+    };
+
+    @Test
+    public void shouldMatchLikeAntPathMatcher() {
+        AntPathMatcher matcher = new AntPathMatcher();
+        Random random = new Random(7);
+        for (int round = 0; round < 3000; round++) {
+            String pattern = join(random, PATTERN_TOKENS);
+            CompiledPathPattern compiled = CompiledPathPattern.compile(pattern);
+            for (int i = 0; i < 20; i++) {
+                String path = join(random, PATH_TOKENS);
+                Assert.assertEquals(pattern + " vs " + path, matcher.match(pattern, path), compiled.matches(path));
+            }
+        }
+    }
+
+    @Test
+    public void shouldMatchCommonRulePatterns() {
+        Assert.assertTrue(CompiledPathPattern.compile("/vodtype/**").matches("/vodtype/1.html"));
+        Assert.assertTrue(CompiledPathPattern.compile("/vodtype/**").matches("/vodtype"));
+        Assert.assertTrue(CompiledPathPattern.compile("/play/{id}-{sid}.html").matches("/play/1-2.html"));
+        Assert.assertFalse(CompiledPathPattern.compile("/play/{id:\\d+}.html").matches("/play/x.html"));
+        Assert.assertTrue(CompiledPathPattern.compile("/news/**/detail/*").matches("/news/a/b/detail/c"));
+        Assert.assertFalse(CompiledPathPattern.compile("/list/?.html").matches("/list/12.html"));
+        Assert.assertFalse(CompiledPathPattern.compile("/a/*").matches("a/b"));
+        Assert.assertFalse(CompiledPathPattern.compile("/a/*").matches(null));
+    }
+
+    private static String join(Random random, String[] tokens) {
+        StringBuilder sb = new StringBuilder();
+        if (random.nextBoolean()) {
+            sb.append('/');
+        }
+        int count = random.nextInt(5);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(random.nextInt(8) == 0 ? "//" : "/");
+            }
+            sb.append(tokens[random.nextInt(tokens.length)]);
+        }
+        if (random.nextInt(4) == 0) {
+            sb.append('/');
+        }
+        return sb.toString();
+    }
+}
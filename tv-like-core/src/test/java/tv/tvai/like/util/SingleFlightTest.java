@@ -0,0 +1,124 @@
+package tv.tvai.like.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SingleFlightTest {
+
+    @Test
+    public void shouldRunOnceForConcurrentCallers() throws Exception {
+        final SingleFlight<String, Object> flight = new SingleFlight<>();
+        final AtomicInteger runs = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Callable<Object> task = new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                runs.incrementAndGet();
+                started.countDown();
+                release.await();
+                return new Object();
+            }
+        };
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Object>> results = new ArrayList<>();
+            results.add(pool.submit(call(flight, task)));
+            started.await();
+            for (int i = 0; i < 7; i++) {
+                results.add(pool.submit(call(flight, task)));
+            }
+            Thread.sleep(100);
+            release.countDown();
+
+            Object first = results.get(0).get(5, TimeUnit.SECONDS);
+            for (Future<Object> result : results) {
+                Assert.assertSame(first, result.get(5, TimeUnit.SECONDS));
+            }
+            Assert.assertEquals(1, runs.get());
+            Assert.assertEquals(0, flight.size());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldShareFailureAndForgetCompletedCalls() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        try {
+            flight.execute("k", new Callable<String>() {
+                @Override
+                public String call() {
+                    throw new IllegalStateException("boom");
+                }
+            }, 1, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+
+        Assert.assertEquals("ok", flight.execute("k", new Callable<String>() {
+            @Override
+            public String call() {
+                return "ok";
+            }
+        }, 1, TimeUnit.SECONDS));
+    }
+
+    @Test(expected = TimeoutException.class)
+    public void shouldBoundWaitForAnotherCallersFlight() throws Exception {
+        final SingleFlight<String, String> flight = new SingleFlight<>();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Thread leader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    flight.execute("k", new Callable<String>() {
+                        @Override
+                        public String call() throws Exception {
+                            started.countDown();
+                            release.await();
+                            return "late";
+                        }
+                    }, 1, TimeUnit.SECONDS);
+                } catch (Exception ignored) {
+                }
+            }
+        });
+        leader.start();
+        try {
+            started.await();
+            flight.execute("k", new Callable<String>() {
+                @Override
+                public String call() {
+                    return "never";
+                }
+            }, 100, TimeUnit.MILLISECONDS);
+        } finally {
+            release.countDown();
+            leader.join();
+        }
+    }
+
+    private static <V> Callable<V> call(final SingleFlight<String, V> flight, final Callable<V> task) {
+        return new Callable<V>() {
+            @Override
+            public V call() throws Exception {
+                return flight.execute("host", task, 5, TimeUnit.SECONDS);
+            }
+        };
+    }
+}
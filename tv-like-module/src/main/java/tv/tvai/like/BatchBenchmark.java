@@ -0,0 +1,64 @@
+package tv.tvai.like;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Measures {@link TV#likeAll} throughput on the bundled fixture for 1..N worker threads.
+ * The fixture carries its own inline DSL, so the numbers do not depend on the network.
+ */
+public class BatchBenchmark {
+
+    private static final int PAGES = 64;
+
+    public static void main(String[] args) throws Exception {
+        String html = TVLikeTest.inputStreamToString();
+        List<Page> pages = new ArrayList<>();
+        for (int i = 0; i < PAGES; i++) {
+            pages.add(new Page(html, "https://mtyy1.com/vodtype/" + i + ".html"));
+        }
+        int sections = new TV(html, "https://mtyy1.com/vodtype/1.html").like().size();
+        System.out.println("cores: " + Runtime.getRuntime().availableProcessors() + ", sections per page: " + sections);
+        System.out.printf("%8s %12s %10s%n", "threads", "pages/s", "scaling");
+        double single = 0;
+        for (int threads = 1; threads <= Runtime.getRuntime().availableProcessors() * 2; threads *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                double rate = run(pages, pool);
+                if (threads == 1) {
+                    single = rate;
+                }
+                System.out.printf("%8d %12.1f %9.2fx%n", threads, rate, rate / single);
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    private static double run(List<Page> pages, ForkJoinPool pool) {
+        int sink = 0;
+        for (int i = 0; i < 5; i++) {
+            sink += count(TV.likeAll(pages, pool));
+        }
+        int rounds = 10;
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            sink += count(TV.likeAll(pages, pool));
+        }
+        long elapsed = System.nanoTime() - start;
+        if (sink == 42) {
+            System.out.print("");
+        }
+        return rounds * pages.size() / (elapsed / 1_000_000_000.0);
+    }
+
+    private static int count(List<List<Map<String, Object>>> results) {
+        int n = 0;
+        for (List<Map<String, Object>> result : results) {
+            n += result.size();
+        }
+        return n;
+    }
+}
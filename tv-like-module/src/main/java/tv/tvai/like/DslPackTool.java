@@ -0,0 +1,26 @@
+package tv.tvai.like;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Packs a local mirror of the hub with {@link DslPackBuilder#addDirectory(File)}.
+ * <p>
+ * Usage: {@code java tv.tvai.like.DslPackTool <dsl directory> <pack file>}
+ */
+public class DslPackTool {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("usage: DslPackTool <dsl directory> <pack file>");
+            System.exit(2);
+        }
+        File directory = new File(args[0]);
+        if (!directory.isDirectory()) {
+            System.err.println("not a directory: " + directory);
+            System.exit(1);
+        }
+        int count = new DslPackBuilder().addDirectory(directory).write(new File(args[1]));
+        System.out.println("packed " + count + " DSLs into " + args[1]);
+    }
+}
@@ -0,0 +1,61 @@
+package tv.tvai.like;
+
+/**
+ * DSL parse time as the DSL grows: {@link DslParser} alone, and the full
+ * {@link RuleParser#compile(String)} including jsoup selector compilation.
+ */
+public class DslParseBenchmark {
+
+    public static void main(String[] args) {
+        for (int blocks : new int[]{25, 100, 400}) {
+            String dsl = dsl(blocks);
+            int rounds = 8000 / blocks;
+            double parse = time(dsl, rounds, false);
+            double compile = time(dsl, Math.max(1, rounds / 8), true);
+            System.out.printf("%4d path blocks, %7d chars: parse %8.3f ms  compile %8.3f ms%n",
+                    blocks, dsl.length(), parse, compile);
+        }
+    }
+
+    static String dsl(int blocks) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < blocks; i++) {
+            sb.append("path: /c").append(i).append("/** || /d").append(i).append("/*.html {\n");
+            for (int s = 0; s < 4; s++) {
+                sb.append("    section:s").append(s).append(" .block-").append(s).append(" > .inner {\n");
+                sb.append("        text: h2.title [transform: trim | collapse-ws]\n");
+                sb.append("        link: a.more [attr: href] [transform: abs-url]\n");
+                sb.append("        items: ul.list > li {\n");
+                sb.append("            text: .name [transform: regex-extract(\"(\\\\d+)\", 1)]\n");
+                sb.append("            img: img [attr: data-src]\n");
+                sb.append("            link: a [attr: href]\n");
+                sb.append("        } [limit: 12] [img-ratio: 2/3, badge: 'hot']\n");
+                sb.append("    } [limit: 1]\n");
+            }
+            sb.append("}\n");
+        }
+        return sb.toString();
+    }
+
+    private static double time(String dsl, int rounds, boolean compile) {
+        int sink = 0;
+        for (int i = 0; i < rounds * 3; i++) {
+            sink += run(dsl, compile);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            sink += run(dsl, compile);
+        }
+        long elapsed = System.nanoTime() - start;
+        if (sink == 42) {
+            System.out.print("");
+        }
+        return elapsed / 1_000_000.0 / rounds;
+    }
+
+    private static int run(String dsl, boolean compile) {
+        return compile
+                ? new RuleParser().compile(dsl).getPathRules().size()
+                : DslParser.parse(dsl, false).size();
+    }
+}
@@ -0,0 +1,95 @@
+package tv.tvai.like;
+
+import tv.tvai.like.util.AntPathMatcher;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Path lookup with hundreds of path blocks: the former linear {@code AntPathMatcher} scan versus
+ * {@link PathIndex} without a useful memo (every lookup a distinct path) and with a warm memo.
+ */
+public class PathIndexBenchmark {
+
+    private static final int BLOCKS = 100;
+
+    public static void main(String[] args) {
+        Map<String, List<RuleNode>> pathRules = new LinkedHashMap<>();
+        for (int i = 0; i < BLOCKS; i++) {
+            pathRules.put("/c" + i + "/detail/{id}.html", Collections.singletonList(new RuleNode("d" + i, ".d")));
+            pathRules.put("/c" + i + "/list/*.html", Collections.singletonList(new RuleNode("l" + i, ".l")));
+            pathRules.put("/c" + i + "/**", Collections.singletonList(new RuleNode("a" + i, ".a")));
+        }
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            int block = (i * 37) % BLOCKS;
+            switch (i % 3) {
+                case 0:
+                    paths.add("/c" + block + "/detail/" + i + ".html");
+                    break;
+                case 1:
+                    paths.add("/c" + block + "/list/" + i + ".html");
+                    break;
+                default:
+                    paths.add("/c" + block + "/x/" + i);
+            }
+        }
+        final AntPathMatcher matcher = new AntPathMatcher();
+        final Map<String, List<RuleNode>> rules = pathRules;
+        final PathIndex cold = new PathIndex(pathRules, 1);
+        final PathIndex warm = new PathIndex(pathRules, 4096);
+
+        System.out.println("patterns: " + pathRules.size() + ", lookups per round: " + paths.size());
+        System.out.printf("linear scan:     %8.2f us/lookup%n", time(paths, new Lookup() {
+            @Override
+            public List<RuleNode> get(String path) {
+                for (Map.Entry<String, List<RuleNode>> entry : rules.entrySet()) {
+                    if (matcher.match(entry.getKey(), path)) {
+                        return entry.getValue();
+                    }
+                }
+                return Collections.emptyList();
+            }
+        }));
+        System.out.printf("index, no memo:  %8.2f us/lookup%n", time(paths, new Lookup() {
+            @Override
+            public List<RuleNode> get(String path) {
+                return cold.lookup(path);
+            }
+        }));
+        System.out.printf("index, memo hit: %8.2f us/lookup%n", time(paths, new Lookup() {
+            @Override
+            public List<RuleNode> get(String path) {
+                return warm.lookup(path);
+            }
+        }));
+    }
+
+    private static double time(List<String> paths, Lookup lookup) {
+        int sink = 0;
+        for (int i = 0; i < 20; i++) {
+            for (String path : paths) {
+                sink += lookup.get(path).size();
+            }
+        }
+        int rounds = 20;
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            for (String path : paths) {
+                sink += lookup.get(path).size();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (sink == 42) {
+            System.out.print("");
+        }
+        return elapsed / 1_000.0 / rounds / paths.size();
+    }
+
+    private interface Lookup {
+        List<RuleNode> get(String path);
+    }
+}
@@ -0,0 +1,64 @@
+package tv.tvai.like;
+
+import tv.tvai.like.util.AntPathMatcher;
+import tv.tvai.like.util.CompiledPathPattern;
+
+/**
+ * Single pattern-against-path matches: {@code AntPathMatcher.match} (tokenizing and a cached
+ * regex per segment) versus a {@link CompiledPathPattern} built once.
+ */
+public class PathPatternBenchmark {
+
+    private static final String[][] CASES = {
+            {"/vodtype/**", "/vodtype/1.html"},
+            {"/voddetail/{id}.html", "/voddetail/12345.html"},
+            {"/play/{id}-{sid}-{nid}.html", "/play/1-2-3.html"},
+            {"/list/*.html", "/list/page/2"},
+            {"/news/**/detail/*.html", "/news/2024/05/detail/abc.html"},
+            {"/play/{id:\\d+}.html", "/play/42.html"},
+    };
+
+    public static void main(String[] args) {
+        AntPathMatcher matcher = new AntPathMatcher();
+        for (String[] c : CASES) {
+            final String pattern = c[0];
+            final String path = c[1];
+            final AntPathMatcher ant = matcher;
+            final CompiledPathPattern compiled = CompiledPathPattern.compile(pattern);
+            double antNs = time(new Match() {
+                @Override
+                public boolean run() {
+                    return ant.match(pattern, path);
+                }
+            });
+            double compiledNs = time(new Match() {
+                @Override
+                public boolean run() {
+                    return compiled.matches(path);
+                }
+            });
+            System.out.printf("%-30s %-32s ant %7.1f ns  compiled %7.1f ns%n", pattern, path, antNs, compiledNs);
+        }
+    }
+
+    private static double time(Match match) {
+        int sink = 0;
+        for (int i = 0; i < 200_000; i++) {
+            sink += match.run() ? 1 : 0;
+        }
+        int iterations = 2_000_000;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += match.run() ? 1 : 0;
+        }
+        long elapsed = System.nanoTime() - start;
+        if (sink == 42) {
+            System.out.print("");
+        }
+        return (double) elapsed / iterations;
+    }
+
+    private interface Match {
+        boolean run();
+    }
+}
@@ -0,0 +1,76 @@
+package tv.tvai.like;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Retained heap per extracted item: field values as {@code HashMap}s (what {@link Result} used to
+ * be) versus the compact {@link Result} sharing one {@link Result.Layout} per rule. Each item has
+ * {@code text}, {@code img} and {@code link}; {@code img} carries one option, like a typical
+ * {@code [img-ratio: ...]} rule. Value strings are shared so only the containers are measured.
+ */
+public class ResultHeapBenchmark {
+
+    private static final int ITEMS = 200_000;
+
+    public static void main(String[] args) {
+        Map<String, Object> imgOptions = new LinkedHashMap<>();
+        imgOptions.put("img-ratio", "16/9");
+        Map<String, Object> noOptions = new LinkedHashMap<>();
+
+        double hashMap = perItem(new Factory() {
+            @Override
+            public Map<String, Object> create(String value, Map<String, Object> options) {
+                Map<String, Object> result = new HashMap<>();
+                result.put("value", value);
+                result.putAll(options);
+                return result;
+            }
+        }, imgOptions, noOptions);
+        final Result.Layout imgLayout = Result.Layout.of(imgOptions);
+        final Result.Layout plainLayout = Result.Layout.of(noOptions);
+        double compact = perItem(new Factory() {
+            @Override
+            public Map<String, Object> create(String value, Map<String, Object> options) {
+                return new Result(value, options.isEmpty() ? plainLayout : imgLayout);
+            }
+        }, imgOptions, noOptions);
+
+        System.out.printf("items: %d%n", ITEMS);
+        System.out.printf("HashMap-backed results: %8.1f bytes/item%n", hashMap);
+        System.out.printf("compact results:        %8.1f bytes/item (%.0f%% less)%n", compact,
+                100 * (1 - compact / hashMap));
+    }
+
+    private static double perItem(Factory factory, Map<String, Object> imgOptions, Map<String, Object> noOptions) {
+        long before = usedHeap();
+        List<Map<String, Object>> items = new ArrayList<>(ITEMS);
+        for (int i = 0; i < ITEMS; i++) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("text", factory.create("title", noOptions));
+            item.put("img", factory.create("/img.jpg", imgOptions));
+            item.put("link", factory.create("/detail", noOptions));
+            items.add(item);
+        }
+        long after = usedHeap();
+        if (items.size() != ITEMS) {
+            throw new IllegalStateException();
+        }
+        return (after - before) / (double) ITEMS;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private interface Factory {
+        Map<String, Object> create(String value, Map<String, Object> options);
+    }
+}
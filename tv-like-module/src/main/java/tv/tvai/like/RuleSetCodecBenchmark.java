@@ -0,0 +1,59 @@
+package tv.tvai.like;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Cold load of a rule set: {@link RuleParser#compile(String)} from DSL text versus
+ * {@link RuleSetCodec#decode(byte[])} from its binary form, each followed by compiling the
+ * selectors of one path as the first extraction would.
+ */
+public class RuleSetCodecBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        for (int blocks : new int[]{25, 100, 400}) {
+            final String dsl = DslParseBenchmark.dsl(blocks);
+            final byte[] binary = RuleSetCodec.encode(new RuleParser().compile(dsl));
+            int rounds = 8000 / blocks;
+            double parse = time(rounds, new Load() {
+                @Override
+                public RuleSet load() {
+                    return new RuleParser().compile(dsl);
+                }
+            });
+            double decode = time(rounds, new Load() {
+                @Override
+                public RuleSet load() throws IOException {
+                    return RuleSetCodec.decode(binary);
+                }
+            });
+            System.out.printf("%4d path blocks: dsl %7d chars, binary %7d bytes; parse %8.3f ms  decode %8.3f ms%n",
+                    blocks, dsl.length(), binary.length, parse, decode);
+        }
+    }
+
+    private static double time(int rounds, Load load) throws IOException {
+        int sink = 0;
+        for (int i = 0; i < rounds * 3; i++) {
+            sink += firstPage(load.load());
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            sink += firstPage(load.load());
+        }
+        long elapsed = System.nanoTime() - start;
+        if (sink == 42) {
+            System.out.print("");
+        }
+        return elapsed / 1_000_000.0 / rounds;
+    }
+
+    private static int firstPage(RuleSet ruleSet) {
+        List<RuleNode> rules = ruleSet.getPathRule("/c1/list");
+        return rules.size();
+    }
+
+    private interface Load {
+        RuleSet load() throws IOException;
+    }
+}
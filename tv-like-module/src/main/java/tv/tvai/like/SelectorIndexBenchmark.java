@@ -0,0 +1,99 @@
+package tv.tvai.like;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares section dispatch with and without {@link RuleIndex} as the number of section rules
+ * grows. "linear" tests every rule against every element, as Extractor did before the index;
+ * "indexed" only tests the rules whose rightmost compound the element could satisfy.
+ */
+public class SelectorIndexBenchmark {
+
+    private static final String[] SELECTORS = {
+            ".public-list-box", ".public-list-exp", ".time-title", ".public-bg", ".public-play",
+            "div.public-list-div", "img.lazy", ".public-prt", ".title-h", ".swiper-slide",
+            ".this-hide", ".this-get", ".unit-date", ".timeline-point", ".coming-soon-timeline-wrapper",
+            "li.swiper-slide > a", ".head-nav .swiper-slide", ".box-width .public-list-box", "a.public-list-exp",
+            ".public-list-prb", "#top-search", ".nav-link", ".more", ".title", "em.fa",
+            ".public-list-subtitle", ".flex.wrap", ".swiper-wrapper", ".logo", ".wow",
+            "h4", "span.public-prt", "div.public-list-bj", ".mask-0", ".br-100",
+            ".public-pic-b", ".public-pic-a", ".public-pic-e", ".hide-b-16", ".unit-time-wrapper",
+    };
+
+    private static final int[] RULE_COUNTS = {1, 5, 10, 20, 40};
+
+    public static void main(String[] args) throws Exception {
+        Document doc = Jsoup.parse(TVLikeTest.inputStreamToString(), "https://mtyy1.com/");
+        Elements elements = doc.body().getAllElements();
+        System.out.println("elements: " + elements.size());
+        System.out.printf("%6s %12s %12s %8s%n", "rules", "linear(ms)", "indexed(ms)", "speedup");
+        for (int n : RULE_COUNTS) {
+            List<RuleNode> rules = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                RuleNode rule = new RuleNode("s" + i, SELECTORS[i]);
+                rule.compile();
+                rules.add(rule);
+            }
+            RuleIndex index = RuleIndex.build(rules);
+            if (linear(elements, rules) != indexed(elements, index)) {
+                throw new IllegalStateException("match counts differ for " + n + " rules");
+            }
+            double linear = time(() -> linear(elements, rules));
+            double indexed = time(() -> indexed(elements, index));
+            System.out.printf("%6d %12.3f %12.3f %7.1fx%n", n, linear, indexed, linear / indexed);
+        }
+    }
+
+    private static int linear(Elements elements, List<RuleNode> rules) {
+        int matches = 0;
+        for (Element el : elements) {
+            for (RuleNode rule : rules) {
+                if (el.is(rule.getEvaluator())) {
+                    matches++;
+                }
+            }
+        }
+        return matches;
+    }
+
+    private static int indexed(Elements elements, RuleIndex index) {
+        RuleIndex.Candidates candidates = new RuleIndex.Candidates();
+        int matches = 0;
+        for (Element el : elements) {
+            index.candidates(el, candidates);
+            for (int c = 0; c < candidates.size; c++) {
+                if (el.is(index.rule(candidates.indexes[c]).getEvaluator())) {
+                    matches++;
+                }
+            }
+        }
+        return matches;
+    }
+
+    private static double time(Workload workload) {
+        int sink = 0;
+        for (int i = 0; i < 200; i++) {
+            sink += workload.run();
+        }
+        int rounds = 200;
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            sink += workload.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        if (sink == 42) {
+            System.out.print("");
+        }
+        return elapsed / 1_000_000.0 / rounds;
+    }
+
+    private interface Workload {
+        int run();
+    }
+}